@@ -3,19 +3,13 @@
  */
 package provided.util;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
-import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.sql.Time;
-import java.sql.Timestamp;
-import java.sql.Types;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -47,6 +41,36 @@ public abstract class DaoBase {
     conn.commit();
   }
 
+  /**
+   * This starts a read-only transaction. MySQL does not assign a transaction ID or take part in
+   * undo logging for a read-only transaction, so it is cheaper than a read-write one. The isolation
+   * level applies to this transaction; use {@link Connection#TRANSACTION_REPEATABLE_READ} when
+   * several queries must see the same snapshot, and {@link Connection#TRANSACTION_READ_COMMITTED}
+   * for a single query.
+   * 
+   * @param conn The connection on which to start the transaction.
+   * @param isolationLevel One of the {@link Connection} TRANSACTION_ constants.
+   * @throws SQLException Thrown if an error occurs starting the transaction.
+   */
+  protected void startReadOnlyTransaction(Connection conn, int isolationLevel)
+      throws SQLException {
+    conn.setAutoCommit(false);
+    conn.setReadOnly(true);
+    conn.setTransactionIsolation(isolationLevel);
+  }
+
+  /**
+   * Ends a transaction started with {@link #startReadOnlyTransaction(Connection, int)} and puts the
+   * connection back in read-write mode.
+   * 
+   * @param conn The connection on which to end the transaction.
+   * @throws SQLException Thrown if an error occurs ending the transaction.
+   */
+  protected void endReadOnlyTransaction(Connection conn) throws SQLException {
+    conn.commit();
+    conn.setReadOnly(false);
+  }
+
   /**
    * Rolls back the changes so that nothing is committed.
    * 
@@ -57,6 +81,15 @@ public abstract class DaoBase {
     conn.rollback();
   }
 
+  /**
+   * The binders for the parameter types the DAOs bind most, resolved once when the class is loaded
+   * so that binding an ID or a name does not look up the registry.
+   */
+  protected static final ParameterBinder<Integer> INTEGER_BINDER =
+      ParameterBinders.forClass(Integer.class);
+  protected static final ParameterBinder<String> STRING_BINDER =
+      ParameterBinders.forClass(String.class);
+
   /**
    * This sets a parameter on a prepared statement. If the parameter is null, it is handled
    * correctly.
@@ -66,130 +99,305 @@ public abstract class DaoBase {
    *        the prepared statement, parameters are indicated by a question mark. From left-to-right,
    *        the index is the order in which a question mark is encountered.
    * @param value The parameter value. This may be null.
-   * @param classType This is the Java class type of the parameter. It is used to select the correct
-   *        method on the driver so that the parameter is added correctly. It is also used to set
-   *        the type in case the parameter is null.
+   * @param classType This is the Java class type of the parameter. It selects the
+   *        {@link ParameterBinder} that binds the value, which also supplies the SQL type used when
+   *        the value is null. See {@link ParameterBinders} for the supported types.
    * @throws SQLException Thrown if an error occurs.
    */
   protected void setParameter(PreparedStatement stmt, int parameterIndex, Object value,
       Class<?> classType) throws SQLException {
-    int sqlType = convertJavaClassToSqlType(classType);
+    ParameterBinders.forClass(classType).bind(stmt, parameterIndex, value);
+  }
 
-    if(Objects.isNull(value)) {
-      stmt.setNull(parameterIndex, sqlType);
-    }
-    else {
-      switch(sqlType) {
-        case Types.DECIMAL:
-          stmt.setBigDecimal(parameterIndex, (BigDecimal)value);
-          break;
-
-        case Types.DOUBLE:
-          stmt.setDouble(parameterIndex, (Double)value);
-          break;
-
-        case Types.INTEGER:
-          stmt.setInt(parameterIndex, (Integer)value);
-          break;
-
-        case Types.OTHER:
-          stmt.setObject(parameterIndex, value);
-          break;
-
-        case Types.VARCHAR:
-          stmt.setString(parameterIndex, (String)value);
-          break;
-
-        default:
-          throw new DaoException("Unknown parameter type: " + classType);
+  /**
+   * This sets a parameter on a prepared statement with a binder that has already been resolved,
+   * like {@link #INTEGER_BINDER}. Use this in place of
+   * {@link #setParameter(PreparedStatement, int, Object, Class)} when the statement runs often.
+   * 
+   * @param stmt The prepared statement on which to set the parameter.
+   * @param parameterIndex The one-based index of the parameter.
+   * @param value The parameter value. This may be null.
+   * @param binder The binder for the parameter's type.
+   * @throws SQLException Thrown if an error occurs.
+   */
+  protected void setParameter(PreparedStatement stmt, int parameterIndex, Object value,
+      ParameterBinder<?> binder) throws SQLException {
+    binder.bind(stmt, parameterIndex, value);
+  }
+
+  /**
+   * The distance left between the order values of neighboring child rows. New rows are appended
+   * at the last order value plus this gap, which leaves room to move or insert a row between two
+   * others by giving it the midpoint, without renumbering its siblings.
+   */
+  protected static final int SEQUENCE_GAP = 1024;
+
+  /**
+   * This returns the order value for a new child row appended after the parent's existing
+   * children: the highest order value plus {@link #SEQUENCE_GAP}, or the gap itself if there are no
+   * children.
+   * 
+   * With an index on (parent ID, order) this is a single index lookup. The parent row is locked
+   * first, so two transactions appending to the same parent are serialized rather than both being
+   * handed the same value. Locking only the children is not enough: when the parent has no
+   * children yet the locking read takes just a gap lock, which both transactions can hold at once,
+   * and their inserts then deadlock. A unique key on (parent ID, order) backs this up: if two
+   * writers ever did collide, the second insert fails instead of creating a duplicate position.
+   * 
+   * This must be called inside a transaction.
+   * 
+   * @param conn The connection
+   * @param table The child table
+   * @param parentId The ID of the parent entity
+   * @return The order value for the new child
+   * @throws SQLException Thrown if an error occurs.
+   */
+  protected Integer getNextSequenceNumber(Connection conn, OrderedChildTable table,
+      Integer parentId) throws SQLException {
+    lockParent(conn, table, parentId);
+
+    try(PreparedStatement stmt = conn.prepareStatement(table.maxOrderSql)) {
+      setParameter(stmt, 1, parentId, INTEGER_BINDER);
+
+      try(ResultSet rs = stmt.executeQuery()) {
+        int last = rs.next() ? rs.getInt(1) : 0;
+        return last + SEQUENCE_GAP;
       }
     }
   }
 
   /**
-   * Converts from a Java class to a java.sql.Types value.
+   * This returns an order value that places a child directly after another child of the same
+   * parent, or first if afterKey is null. The value is the midpoint between the two neighbors. Only
+   * when the neighbors are adjacent numbers are the parent's children renumbered (see
+   * {@link #renumberSequence(Connection, OrderedChildTable, Integer)}).
+   * 
+   * This must be called inside a transaction.
    * 
-   * @param classType The class type
-   * @return A java.sql.Types value
+   * @param conn The connection
+   * @param table The child table
+   * @param parentId The ID of the parent entity
+   * @param afterKey The primary key of the child to follow, or null to go first. It must be a
+   *        child of the same parent.
+   * @param movingKey The primary key of the child being moved, or null if a new child is being
+   *        inserted. It is ignored when looking for the next neighbor.
+   * @return The order value
+   * @throws DaoException Thrown if afterKey is not a child of the parent.
+   * @throws SQLException Thrown if an error occurs.
    */
-  private int convertJavaClassToSqlType(Class<?> classType) {
-    if(Integer.class.equals(classType)) {
-      return Types.INTEGER;
-    }
+  protected Integer getSequenceNumberAfter(Connection conn, OrderedChildTable table,
+      Integer parentId, Integer afterKey, Integer movingKey) throws SQLException {
+    lockParent(conn, table, parentId);
+
+    for(int attempt = 0; attempt < 2; attempt++) {
+      int lower = Objects.isNull(afterKey) ? 0 : getSequenceNumberOf(conn, table, parentId, afterKey);
+      Integer upper = getSequenceNumberAbove(conn, table, parentId, lower, movingKey);
+
+      if(Objects.isNull(upper)) {
+        return lower + SEQUENCE_GAP;
+      }
 
-    if(String.class.equals(classType)) {
-      return Types.VARCHAR;
+      if(upper - lower > 1) {
+        return lower + (upper - lower) / 2;
+      }
+
+      renumberSequence(conn, table, parentId);
     }
 
-    if(Double.class.equals(classType)) {
-      return Types.DOUBLE;
+    throw new DaoException("Unable to find room in " + table + " for parent " + parentId);
+  }
+
+  /**
+   * This locks the parent row of a child table, which every change to the parent's sequence takes
+   * before reading or locking the children. Taking the locks in that order keeps appenders and
+   * movers from deadlocking on each other.
+   * 
+   * @param conn The connection
+   * @param table The child table
+   * @param parentId The ID of the parent entity
+   * @throws SQLException Thrown if an error occurs.
+   */
+  private void lockParent(Connection conn, OrderedChildTable table, Integer parentId)
+      throws SQLException {
+    try(PreparedStatement stmt = conn.prepareStatement(table.lockParentSql)) {
+      setParameter(stmt, 1, parentId, INTEGER_BINDER);
+
+      try(ResultSet rs = stmt.executeQuery()) {
+        rs.next();
+      }
     }
+  }
+
+  /**
+   * This moves a child so that it directly follows another child of the same parent, or comes
+   * first if afterKey is null. Only the moved row is updated unless its new neighbors have no room
+   * between them.
+   * 
+   * This must be called inside a transaction.
+   * 
+   * @param conn The connection
+   * @param table The child table
+   * @param key The primary key of the child to move
+   * @param afterKey The primary key of the child it should follow, or null to move it first. It
+   *        must be a child of the same parent.
+   * @return The ID of the parent entity
+   * @throws DaoException Thrown if either child does not exist or they have different parents.
+   * @throws SQLException Thrown if an error occurs.
+   */
+  protected Integer moveInSequence(Connection conn, OrderedChildTable table, Integer key,
+      Integer afterKey) throws SQLException {
+    Integer parentId;
+
+    /*
+     * The parent is read without a lock. The child row is locked only after the parent row, by
+     * getSequenceNumberAfter and the update, in the same order an appender takes them.
+     */
+    try(PreparedStatement stmt = conn.prepareStatement(table.parentOfKeySql)) {
+      setParameter(stmt, 1, key, INTEGER_BINDER);
 
-    if(BigDecimal.class.equals(classType)) {
-      return Types.DECIMAL;
+      try(ResultSet rs = stmt.executeQuery()) {
+        if(!rs.next()) {
+          throw new DaoException("No row in " + table.getTableName() + " with ID " + key);
+        }
+
+        parentId = rs.getInt(1);
+      }
     }
 
-    if(LocalTime.class.equals(classType)) {
-      return Types.OTHER;
+    Integer order = getSequenceNumberAfter(conn, table, parentId, afterKey, key);
+
+    try(PreparedStatement stmt = conn.prepareStatement(table.updateOrderSql)) {
+      setParameter(stmt, 1, order, INTEGER_BINDER);
+      setParameter(stmt, 2, key, INTEGER_BINDER);
+      stmt.executeUpdate();
     }
 
-    throw new DaoException("Unsupported class type: " + classType.getName());
+    return parentId;
   }
 
   /**
-   * This retrieves the number of child rows and adds one to the value. It is used to set the order
-   * of a child row. For a *real* application, a more sophisticated approach is desired. This method
-   * does not allow for entity reordering and does not allow for an entity to be deleted.
+   * This spreads a parent's children out to multiples of {@link #SEQUENCE_GAP}, keeping their
+   * current order. The rows are first moved to negative values so that the unique (parent ID,
+   * order) key is never violated part way through.
    * 
    * @param conn The connection
-   * @param id The ID of the parent entity
-   * @param tableName The name of the table with the child rows
-   * @param idName The name of the parent ID field
-   * @return The count of the entities attached to the parent plus one
+   * @param table The child table
+   * @param parentId The ID of the parent entity
    * @throws SQLException Thrown if an error occurs.
    */
-  protected Integer getNextSequenceNumber(Connection conn, Integer id, String tableName,
-      String idName) throws SQLException {
-    String sql = "SELECT COUNT(*) FROM " + tableName + " WHERE " + idName + " = ?";
+  protected void renumberSequence(Connection conn, OrderedChildTable table, Integer parentId)
+      throws SQLException {
+    try(PreparedStatement stmt = conn.prepareStatement(table.negateOrdersSql)) {
+      setParameter(stmt, 1, parentId, INTEGER_BINDER);
+      stmt.executeUpdate();
+    }
+
+    try(PreparedStatement select = conn.prepareStatement(table.keysByOrderDescSql);
+        PreparedStatement update = conn.prepareStatement(table.updateOrderSql)) {
+      setParameter(select, 1, parentId, INTEGER_BINDER);
+
+      try(ResultSet rs = select.executeQuery()) {
+        int position = 1;
+
+        /* The values are negated, so descending order is the original ascending order. */
+        while(rs.next()) {
+          setParameter(update, 1, position++ * SEQUENCE_GAP, INTEGER_BINDER);
+          setParameter(update, 2, rs.getInt(1), INTEGER_BINDER);
+          update.addBatch();
+        }
+      }
+
+      update.executeBatch();
+    }
+  }
+
+  /**
+   * Returns the order value of a single child row, which must belong to the given parent. An order
+   * value from another parent's sequence would place the row at an arbitrary position.
+   */
+  private int getSequenceNumberOf(Connection conn, OrderedChildTable table, Integer parentId,
+      Integer key) throws SQLException {
+    try(PreparedStatement stmt = conn.prepareStatement(table.orderOfKeySql)) {
+      setParameter(stmt, 1, key, INTEGER_BINDER);
+      setParameter(stmt, 2, parentId, INTEGER_BINDER);
+
+      try(ResultSet rs = stmt.executeQuery()) {
+        if(!rs.next()) {
+          throw new DaoException("No row in " + table.getTableName() + " with ID " + key
+              + " for parent " + parentId);
+        }
+
+        return rs.getInt(1);
+      }
+    }
+  }
+
+  /**
+   * Returns the smallest order value above the given one for the parent, ignoring the row being
+   * moved, or null if there is none.
+   */
+  private Integer getSequenceNumberAbove(Connection conn, OrderedChildTable table,
+      Integer parentId, int order, Integer movingKey) throws SQLException {
+    String sql =
+        Objects.isNull(movingKey) ? table.minOrderAboveSql : table.minOrderAboveExcludingSql;
 
     try(PreparedStatement stmt = conn.prepareStatement(sql)) {
-      setParameter(stmt, 1, id, Integer.class);
+      setParameter(stmt, 1, parentId, INTEGER_BINDER);
+      setParameter(stmt, 2, order, INTEGER_BINDER);
+
+      if(Objects.nonNull(movingKey)) {
+        setParameter(stmt, 3, movingKey, INTEGER_BINDER);
+      }
 
       try(ResultSet rs = stmt.executeQuery()) {
         if(rs.next()) {
-          return rs.getInt(1) + 1;
+          int above = rs.getInt(1);
+          return rs.wasNull() ? null : above;
         }
 
-        return 1;
+        return null;
       }
     }
   }
 
   /**
-   * This returns the integer primary key value of the last row inserted into the given table. It
-   * allows the ID to be inserted into the entity object after inserting it into the table.
-   * 
-   * The other way of doing this is to call {@link Statement#getGeneratedKeys()}, but this returns a
-   * result set that needs to be parsed for the ID. It's not really any easier than this approach
-   * but should be closer to database-agnostic.
+   * This returns the integer primary key generated by an insert. The statement must have been
+   * prepared with {@link Statement#RETURN_GENERATED_KEYS}. Reading the key this way costs no extra
+   * round trip; the driver returns it with the insert result.
    * 
-   * @param conn The connection
-   * @param table The name of the table on which to get the last inserted primary key value
+   * @param stmt The statement that executed the insert
    * @return The primary key value
-   * @throws SQLException Thrown if an error occurs
+   * @throws SQLException Thrown if an error occurs or no key was generated
    */
-  protected Integer getLastInsertId(Connection conn, String table) throws SQLException {
-    String sql = String.format("SELECT LAST_INSERT_ID() FROM %s", table);
+  protected Integer getGeneratedKey(Statement stmt) throws SQLException {
+    return getGeneratedKeys(stmt, 1).get(0);
+  }
 
-    try(Statement stmt = conn.createStatement()) {
-      try(ResultSet rs = stmt.executeQuery(sql)) {
-        if(rs.next()) {
-          return rs.getInt(1);
-        }
+  /**
+   * This returns the integer primary keys generated by a batch of inserts or a multi-row insert,
+   * in the order the rows were added. The statement must have been prepared with
+   * {@link Statement#RETURN_GENERATED_KEYS}.
+   * 
+   * @param stmt The statement that executed the inserts
+   * @param expected The number of rows that were inserted
+   * @return The primary key values
+   * @throws SQLException Thrown if an error occurs or the number of keys does not match
+   */
+  protected List<Integer> getGeneratedKeys(Statement stmt, int expected) throws SQLException {
+    List<Integer> keys = new ArrayList<>(expected);
 
-        throw new SQLException("Unable to retrieve the primary key value. No result set!");
+    try(ResultSet rs = stmt.getGeneratedKeys()) {
+      while(rs.next()) {
+        keys.add(rs.getInt(1));
       }
     }
+
+    if(keys.size() != expected) {
+      throw new SQLException(
+          "Expected " + expected + " generated keys but the driver returned " + keys.size());
+    }
+
+    return keys;
   }
 
   /**
@@ -224,6 +432,9 @@ public abstract class DaoBase {
    * Since the result set does not contain a column named "ingredients", the value is left alone and
    * the list initialization is preserved.
    * 
+   * The constructor, field list and column names are looked up once per class and cached in a
+   * {@link RowMapper}, so repeated calls for the same class do no reflective scanning.
+   * 
    * @param <T> The Generic for the type of object to create and return.
    * @param rs The result set in which to extract values. The result set must be positioned on the
    *        correct row by the caller.
@@ -231,80 +442,84 @@ public abstract class DaoBase {
    * @return A populated class.
    */
   protected <T> T extract(ResultSet rs, Class<T> classType) {
-    try {
-      /* Obtain the constructor and create an object of the correct type. */
-      Constructor<T> con = classType.getConstructor();
-      T obj = con.newInstance();
-
-      /* Get the list of fields and loop through them. */
-      for(Field field : classType.getDeclaredFields()) {
-        String colName = camelCaseToSnakeCase(field.getName());
-        Class<?> fieldType = field.getType();
-
-        /*
-         * Set the field accessible flag which means that we can populate even private fields
-         * without using the setter.
-         */
-        field.setAccessible(true);
-        Object fieldValue = null;
-
-        try {
-          fieldValue = rs.getObject(colName);
-        }
-        catch(SQLException e) {
-          /*
-           * An exception caught here means that the field name isn't in the result set. Don't take
-           * any action.
-           */
-        }
+    return RowMapper.forClass(classType).map(rs);
+  }
 
-        /*
-         * Only set the value in the object if there is a value with the same name in the result
-         * set. This will preserve instance variables (like lists) that are assigned values when the
-         * object is created.
-         */
-        if(Objects.nonNull(fieldValue)) {
-          /*
-           * Convert the following types: Time -> LocalTime, and Timestamp -> LocalDateTime.
-           */
-          if(fieldValue instanceof Time && fieldType.equals(LocalTime.class)) {
-            fieldValue = ((Time)fieldValue).toLocalTime();
-          }
-          else if(fieldValue instanceof Timestamp && fieldType.equals(LocalDateTime.class)) {
-            fieldValue = ((Timestamp)fieldValue).toLocalDateTime();
-          }
-
-          field.set(obj, fieldValue);
-        }
-      }
+  /**
+   * This extracts every remaining row of a result set into a list of objects of the given type,
+   * using {@link #extract(ResultSet, Class)} for each row.
+   * 
+   * @param <T> The Generic for the type of object to create and return.
+   * @param rs The result set in which to extract values. Rows are read from the current position.
+   * @param classType The actual class type of the objects to create.
+   * @return The objects, in result set order.
+   * @throws SQLException Thrown if an error occurs reading the result set.
+   */
+  protected <T> List<T> extractAll(ResultSet rs, Class<T> classType) throws SQLException {
+    return extractAll(rs, classType, row -> extract(row, classType));
+  }
 
-      return obj;
+  /**
+   * This reads every remaining row of a result set with a row reader and returns what it returns,
+   * for rows that need more than a single {@link #extract(ResultSet, Class)}.
+   * 
+   * The batch is timed. An {@link ExtractBatchEvent} is recorded when a Flight Recorder recording
+   * has the event enabled and the batch took longer than the event threshold, and
+   * {@link #rowsExtracted(int, long)} is called with the row count and elapsed time.
+   * 
+   * @param <T> The Generic for the type of object returned for each row.
+   * @param rs The result set. Rows are read from the current position.
+   * @param entityType The entity class the rows are mapped to, recorded in the event.
+   * @param reader Reads the current row.
+   * @return The objects, in result set order.
+   * @throws SQLException Thrown if an error occurs reading the result set.
+   */
+  protected <T> List<T> extractAll(ResultSet rs, Class<?> entityType, RowReader<T> reader)
+      throws SQLException {
+    ExtractBatchEvent event = new ExtractBatchEvent();
+    long start = System.nanoTime();
+    List<T> rows = new ArrayList<>();
+
+    event.begin();
 
+    while(rs.next()) {
+      rows.add(reader.read(rs));
     }
-    catch(Exception e) {
-      throw new DaoException("Unable to create object of type " + classType.getName(), e);
+
+    event.end();
+    rowsExtracted(rows.size(), System.nanoTime() - start);
+
+    if(event.shouldCommit()) {
+      event.entityType = entityType;
+      event.rows = rows.size();
+      event.commit();
     }
+
+    return rows;
   }
 
   /**
-   * This converts a camel case value (rowInsertTime) to snake case (row_insert_time).
+   * This is called after {@link #extractAll(ResultSet, Class, RowReader)} reads a result set. It
+   * does nothing here; a DAO can override it to account for the time spent mapping rows.
    * 
-   * @param identifier The name in camel case to convert.
-   * @return The name converted to snake case.
+   * @param rows The number of rows read.
+   * @param elapsedNanos The time taken to read and map them, in nanoseconds.
    */
-  private String camelCaseToSnakeCase(String identifier) {
-    StringBuilder nameBuilder = new StringBuilder();
+  protected void rowsExtracted(int rows, long elapsedNanos) {}
 
-    for(char ch : identifier.toCharArray()) {
-      if(Character.isUpperCase(ch)) {
-        nameBuilder.append('_').append(Character.toLowerCase(ch));
-      }
-      else {
-        nameBuilder.append(ch);
-      }
-    }
-
-    return nameBuilder.toString();
+  /**
+   * This reads one row of a result set. The result set is positioned on the row by the caller.
+   * 
+   * @param <T> The type returned for the row.
+   */
+  @FunctionalInterface
+  protected interface RowReader<T> {
+    /**
+     * @param rs The result set, positioned on the row.
+     * @return The object read from the row.
+     * @throws SQLException Thrown if an error occurs.
+     */
+    T read(ResultSet rs) throws SQLException;
   }
 
   /**
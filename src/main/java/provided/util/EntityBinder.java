@@ -0,0 +1,161 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * This is a binder plan for writing an entity to a prepared statement: for each parameter, in
+ * order, where its value comes from and which {@link ParameterBinder} binds it. The plan is built
+ * once, usually into a static final field next to the SQL it binds, and all the reflection and
+ * binder lookups happen then. Binding an entity is one read and one bind per parameter.
+ *
+ * A plan is built by chaining {@link #field(String)} for values read straight from an entity field
+ * and {@link #value(Class, Function)} for values computed from the entity. Each call returns a new
+ * plan, so a plan can be shared between threads.
+ *
+ * @param <T> The entity type.
+ */
+public final class EntityBinder<T> {
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+  private final Class<T> entityType;
+  private final Parameter[] parameters;
+
+  private EntityBinder(Class<T> entityType, Parameter[] parameters) {
+    this.entityType = entityType;
+    this.parameters = parameters;
+  }
+
+  /**
+   * This starts an empty plan for an entity class.
+   *
+   * @param <T> The entity type
+   * @param entityType The entity class
+   * @return A plan with no parameters
+   */
+  public static <T> EntityBinder<T> of(Class<T> entityType) {
+    return new EntityBinder<>(entityType, new Parameter[0]);
+  }
+
+  /**
+   * This returns a plan with one more parameter, read from the named field of the entity. The
+   * binder is chosen by the field's declared type.
+   *
+   * @param fieldName The name of a field declared by the entity class
+   * @return The extended plan
+   * @throws DaoBase.DaoException Thrown if the field does not exist or its type has no binder.
+   */
+  public EntityBinder<T> field(String fieldName) {
+    try {
+      Field field = entityType.getDeclaredField(fieldName);
+      field.setAccessible(true);
+
+      MethodHandle getter = MethodHandles.lookup().unreflectGetter(field).asType(GETTER_TYPE);
+      ParameterBinder<?> binder = ParameterBinders.forClass(boxed(field.getType()));
+
+      return with(new Parameter(getter, null, binder));
+    }
+    catch(ReflectiveOperationException e) {
+      throw new DaoBase.DaoException(
+          "Unable to bind field " + fieldName + " of " + entityType.getName(), e);
+    }
+  }
+
+  /**
+   * This returns a plan with one more parameter, computed from the entity. Use this for values
+   * that are not a field of the entity, like the ID of a related entity.
+   *
+   * @param <V> The value type
+   * @param valueType The class used to choose the binder
+   * @param accessor Computes the value from the entity. It may return null.
+   * @return The extended plan
+   */
+  public <V> EntityBinder<T> value(Class<V> valueType, Function<? super T, ? extends V> accessor) {
+    return with(new Parameter(null, accessor, ParameterBinders.forClass(valueType)));
+  }
+
+  /**
+   * This binds the entity to parameters 1 through {@link #getParameterCount()}.
+   *
+   * @param stmt The prepared statement
+   * @param entity The entity
+   * @throws SQLException Thrown if an error occurs.
+   */
+  public void bind(PreparedStatement stmt, T entity) throws SQLException {
+    bind(stmt, entity, 1);
+  }
+
+  /**
+   * This binds the entity to consecutive parameters, starting at firstIndex. It returns the index
+   * of the next parameter, so several plans can bind into one statement.
+   *
+   * @param stmt The prepared statement
+   * @param entity The entity
+   * @param firstIndex The one-based index of the first parameter
+   * @return The index following the last parameter bound
+   * @throws SQLException Thrown if an error occurs.
+   */
+  public int bind(PreparedStatement stmt, T entity, int firstIndex) throws SQLException {
+    int index = firstIndex;
+
+    for(Parameter parameter : parameters) {
+      parameter.binder.bind(stmt, index++, parameter.read(entity));
+    }
+
+    return index;
+  }
+
+  public int getParameterCount() {
+    return parameters.length;
+  }
+
+  private EntityBinder<T> with(Parameter parameter) {
+    Parameter[] extended = Arrays.copyOf(parameters, parameters.length + 1);
+    extended[parameters.length] = parameter;
+    return new EntityBinder<>(entityType, extended);
+  }
+
+  private static Class<?> boxed(Class<?> type) {
+    return MethodType.methodType(type).wrap().returnType();
+  }
+
+  /**
+   * One parameter of the plan: where its value comes from and how it is bound.
+   */
+  private static final class Parameter {
+    private final MethodHandle getter;
+    @SuppressWarnings("rawtypes")
+    private final Function accessor;
+    private final ParameterBinder<?> binder;
+
+    Parameter(MethodHandle getter, Function<?, ?> accessor, ParameterBinder<?> binder) {
+      this.getter = getter;
+      this.accessor = accessor;
+      this.binder = binder;
+    }
+
+    @SuppressWarnings("unchecked")
+    Object read(Object entity) {
+      if(Objects.isNull(getter)) {
+        return accessor.apply(entity);
+      }
+
+      try {
+        return (Object)getter.invokeExact(entity);
+      }
+      catch(Throwable e) {
+        throw new DaoBase.DaoException("Unable to read a field of " + entity.getClass().getName(), e);
+      }
+    }
+  }
+}
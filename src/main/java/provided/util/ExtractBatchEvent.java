@@ -0,0 +1,36 @@
+/**
+ *
+ */
+package provided.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * This is the JDK Flight Recorder event for one call to
+ * {@link DaoBase#extractAll(java.sql.ResultSet, Class, DaoBase.RowReader)}. Its duration covers
+ * reading the rows from the driver and mapping them to entities.
+ */
+@Name(ExtractBatchEvent.NAME)
+@Label("Extract Batch")
+@Category({"Recipes", "Database"})
+@Description("Rows read from one result set and mapped to entities")
+@StackTrace(false)
+@Threshold("1 ms")
+public final class ExtractBatchEvent extends Event {
+  /**
+   * The event name used in recordings and recording settings.
+   */
+  public static final String NAME = "recipes.ExtractBatch";
+
+  @Label("Entity Type")
+  Class<?> entityType;
+
+  @Label("Rows")
+  int rows;
+}
@@ -0,0 +1,96 @@
+/**
+ *
+ */
+package provided.util;
+
+/**
+ * This describes a child table whose rows are kept in order within their parent, like the
+ * ingredients or steps of a recipe. It names the columns that the sequence methods in
+ * {@link DaoBase} need. The table should have a unique key on (parent ID, order) so that the
+ * database rejects two rows with the same position.
+ *
+ * The parent table is named too, because the sequence methods lock the parent row before reading
+ * the children. A locking read of the children alone only takes gap locks when the parent has no
+ * children yet, and those do not keep two writers apart.
+ */
+public final class OrderedChildTable {
+  private final String tableName;
+  private final String keyName;
+  private final String parentTableName;
+  private final String parentIdName;
+  private final String orderName;
+
+  /*
+   * The statements the sequence methods in DaoBase run against this table, built once so that each
+   * call sends the same SQL text and can reuse a cached prepared statement.
+   */
+  final String lockParentSql;
+  final String maxOrderSql;
+  final String minOrderAboveSql;
+  final String minOrderAboveExcludingSql;
+  final String orderOfKeySql;
+  final String parentOfKeySql;
+  final String updateOrderSql;
+  final String negateOrdersSql;
+  final String keysByOrderDescSql;
+
+  /**
+   * @param tableName The name of the child table
+   * @param keyName The name of the child table's primary key column
+   * @param parentTableName The name of the parent table
+   * @param parentIdName The name of the column holding the parent ID. The parent table's primary
+   *        key column must have the same name.
+   * @param orderName The name of the column holding the order value
+   */
+  public OrderedChildTable(String tableName, String keyName, String parentTableName,
+      String parentIdName, String orderName) {
+    this.tableName = tableName;
+    this.keyName = keyName;
+    this.parentTableName = parentTableName;
+    this.parentIdName = parentIdName;
+    this.orderName = orderName;
+
+    String byParent = " WHERE " + parentIdName + " = ?";
+    String byKey = " WHERE " + keyName + " = ?";
+
+    this.lockParentSql = "SELECT " + parentIdName + " FROM " + parentTableName + byParent
+        + " FOR UPDATE";
+    this.maxOrderSql = "SELECT MAX(" + orderName + ") FROM " + tableName + byParent + " FOR UPDATE";
+    this.minOrderAboveSql = "SELECT MIN(" + orderName + ") FROM " + tableName + byParent + " AND "
+        + orderName + " > ? FOR UPDATE";
+    this.minOrderAboveExcludingSql = "SELECT MIN(" + orderName + ") FROM " + tableName + byParent
+        + " AND " + orderName + " > ? AND " + keyName + " <> ? FOR UPDATE";
+    this.orderOfKeySql = "SELECT " + orderName + " FROM " + tableName + byKey + " AND "
+        + parentIdName + " = ?";
+    this.parentOfKeySql = "SELECT " + parentIdName + " FROM " + tableName + byKey;
+    this.updateOrderSql = "UPDATE " + tableName + " SET " + orderName + " = ?" + byKey;
+    this.negateOrdersSql = "UPDATE " + tableName + " SET " + orderName + " = -" + orderName + byParent;
+    this.keysByOrderDescSql = "SELECT " + keyName + " FROM " + tableName + byParent + " ORDER BY "
+        + orderName + " DESC";
+  }
+
+  public String getTableName() {
+    return tableName;
+  }
+
+  public String getKeyName() {
+    return keyName;
+  }
+
+  public String getParentTableName() {
+    return parentTableName;
+  }
+
+  public String getParentIdName() {
+    return parentIdName;
+  }
+
+  public String getOrderName() {
+    return orderName;
+  }
+
+  @Override
+  public String toString() {
+    return tableName + "(" + parentIdName + ", " + orderName + ")";
+  }
+}
@@ -0,0 +1,76 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Objects;
+
+/**
+ * This binds values of one Java type to prepared statement parameters. It pairs the driver setter
+ * for the type with the java.sql.Types value used when the value is null, so binding a parameter
+ * is a null check and one call to the setter. Binders are looked up by class with
+ * {@link ParameterBinders#forClass(Class)}.
+ *
+ * @param <T> The Java type that is bound.
+ */
+public final class ParameterBinder<T> {
+  private final Class<T> type;
+  private final int sqlType;
+  private final Setter<? super T> setter;
+
+  /**
+   * @param type The Java type that is bound
+   * @param sqlType The java.sql.Types value to bind a null value as
+   * @param setter The call that binds a non-null value
+   */
+  public ParameterBinder(Class<T> type, int sqlType, Setter<? super T> setter) {
+    this.type = Objects.requireNonNull(type);
+    this.sqlType = sqlType;
+    this.setter = Objects.requireNonNull(setter);
+  }
+
+  /**
+   * This sets a parameter on a prepared statement. If the value is null, it is bound as a null of
+   * this binder's SQL type.
+   *
+   * @param stmt The prepared statement on which to set the parameter.
+   * @param parameterIndex The one-based index of the parameter.
+   * @param value The parameter value. This may be null.
+   * @throws SQLException Thrown if an error occurs.
+   */
+  public void bind(PreparedStatement stmt, int parameterIndex, Object value) throws SQLException {
+    if(Objects.isNull(value)) {
+      stmt.setNull(parameterIndex, sqlType);
+    }
+    else {
+      setter.set(stmt, parameterIndex, type.cast(value));
+    }
+  }
+
+  public Class<T> getType() {
+    return type;
+  }
+
+  public int getSqlType() {
+    return sqlType;
+  }
+
+  /**
+   * This binds a non-null value, usually with one of the typed setters on
+   * {@link PreparedStatement}.
+   *
+   * @param <T> The Java type that is bound.
+   */
+  @FunctionalInterface
+  public interface Setter<T> {
+    /**
+     * @param stmt The prepared statement
+     * @param parameterIndex The one-based index of the parameter
+     * @param value The value, never null
+     * @throws SQLException Thrown if an error occurs.
+     */
+    void set(PreparedStatement stmt, int parameterIndex, T value) throws SQLException;
+  }
+}
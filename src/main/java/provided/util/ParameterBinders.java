@@ -0,0 +1,86 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This is the registry of {@link ParameterBinder}s, keyed by Java class. It starts with binders
+ * for the common JDBC types, binds any enum by its name, and accepts binders for custom types
+ * through {@link #register(Class, int, ParameterBinder.Setter)}.
+ *
+ * The java.time types are bound with the JDBC 4.2 setObject overload that takes an explicit SQL
+ * type, so the driver does not have to infer the type from the value.
+ */
+public final class ParameterBinders {
+  private static final Map<Class<?>, ParameterBinder<?>> BINDERS = new ConcurrentHashMap<>();
+
+  static {
+    register(Integer.class, Types.INTEGER, (stmt, index, value) -> stmt.setInt(index, value));
+    register(Long.class, Types.BIGINT, (stmt, index, value) -> stmt.setLong(index, value));
+    register(Short.class, Types.SMALLINT, (stmt, index, value) -> stmt.setShort(index, value));
+    register(Double.class, Types.DOUBLE, (stmt, index, value) -> stmt.setDouble(index, value));
+    register(Float.class, Types.REAL, (stmt, index, value) -> stmt.setFloat(index, value));
+    register(Boolean.class, Types.BOOLEAN, (stmt, index, value) -> stmt.setBoolean(index, value));
+    register(String.class, Types.VARCHAR, (stmt, index, value) -> stmt.setString(index, value));
+    register(BigDecimal.class, Types.DECIMAL, (stmt, index, value) -> stmt.setBigDecimal(index, value));
+    register(byte[].class, Types.VARBINARY, (stmt, index, value) -> stmt.setBytes(index, value));
+    register(LocalTime.class, Types.TIME, (stmt, index, value) -> stmt.setObject(index, value, Types.TIME));
+    register(LocalDate.class, Types.DATE, (stmt, index, value) -> stmt.setObject(index, value, Types.DATE));
+    register(LocalDateTime.class, Types.TIMESTAMP,
+        (stmt, index, value) -> stmt.setObject(index, value, Types.TIMESTAMP));
+  }
+
+  private ParameterBinders() {}
+
+  /**
+   * This adds or replaces the binder for a type.
+   *
+   * @param <T> The Java type
+   * @param type The Java class
+   * @param sqlType The java.sql.Types value used to bind a null value
+   * @param setter The call that binds a non-null value
+   */
+  public static <T> void register(Class<T> type, int sqlType, ParameterBinder.Setter<? super T> setter) {
+    BINDERS.put(type, new ParameterBinder<>(type, sqlType, setter));
+  }
+
+  /**
+   * This returns the binder for a type. Enums without a registered binder are bound as their
+   * constant name, and the binder is remembered.
+   *
+   * @param <T> The Java type
+   * @param type The Java class
+   * @return The binder
+   * @throws DaoBase.DaoException Thrown if there is no binder for the type.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> ParameterBinder<T> forClass(Class<T> type) {
+    ParameterBinder<?> binder = BINDERS.get(type);
+
+    if(Objects.isNull(binder)) {
+      if(!type.isEnum()) {
+        throw new DaoBase.DaoException("Unsupported class type: " + type.getName());
+      }
+
+      binder = BINDERS.computeIfAbsent(type, ParameterBinders::enumBinder);
+    }
+
+    return (ParameterBinder<T>)binder;
+  }
+
+  private static <E extends Enum<E>> ParameterBinder<?> enumBinder(Class<?> type) {
+    @SuppressWarnings("unchecked")
+    Class<E> enumType = (Class<E>)type;
+    return new ParameterBinder<>(enumType, Types.VARCHAR,
+        (stmt, index, value) -> stmt.setString(index, value.name()));
+  }
+}
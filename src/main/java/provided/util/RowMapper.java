@@ -0,0 +1,276 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * This holds everything {@link DaoBase#extract(ResultSet, Class)} needs to know about an entity
+ * class: a handle to its zero-argument constructor and, for every instance field, the column name
+ * and a handle that stores into the field. All of the reflection is done once per class, the first
+ * time the class is mapped. After that, mapping a row is a constructor call plus one store per
+ * column.
+ *
+ * @param <T> The entity type.
+ */
+final class RowMapper<T> {
+  private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+  private static final MethodType SETTER_TYPE =
+      MethodType.methodType(void.class, Object.class, Object.class);
+
+  /**
+   * The per-class cache. {@link ClassValue} computes each mapper once and does not keep entity
+   * classes from being unloaded.
+   */
+  private static final ClassValue<RowMapper<?>> MAPPERS = new ClassValue<>() {
+    @Override
+    protected RowMapper<?> computeValue(Class<?> type) {
+      return new RowMapper<>(type);
+    }
+  };
+
+  /** The column plans for the result set each thread is currently mapping. */
+  private static final ThreadLocal<BoundPlans> BOUND_PLANS =
+      ThreadLocal.withInitial(BoundPlans::new);
+
+  private final Class<T> classType;
+  private final MethodHandle constructor;
+  private final FieldMapping[] fields;
+
+  /**
+   * Returns the cached mapper for the given class, building it on first use.
+   *
+   * @param <T> The entity type.
+   * @param classType The entity class.
+   * @return The mapper.
+   */
+  @SuppressWarnings("unchecked")
+  static <T> RowMapper<T> forClass(Class<T> classType) {
+    return (RowMapper<T>)MAPPERS.get(classType);
+  }
+
+  private RowMapper(Class<T> classType) {
+    this.classType = classType;
+
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+      this.constructor =
+          lookup.unreflectConstructor(classType.getConstructor()).asType(CONSTRUCTOR_TYPE);
+
+      List<FieldMapping> mappings = new ArrayList<>();
+
+      for(Field field : classType.getDeclaredFields()) {
+        /*
+         * Static fields are not part of a row, and final fields cannot be assigned after
+         * construction.
+         */
+        if(Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers())) {
+          continue;
+        }
+
+        field.setAccessible(true);
+        MethodHandle setter = lookup.unreflectSetter(field).asType(SETTER_TYPE);
+
+        mappings.add(new FieldMapping(camelCaseToSnakeCase(field.getName()), field.getType(),
+            setter));
+      }
+
+      this.fields = mappings.toArray(new FieldMapping[0]);
+    }
+    catch(ReflectiveOperationException | RuntimeException e) {
+      throw new DaoBase.DaoException("Unable to build a row mapper for " + classType.getName(), e);
+    }
+  }
+
+  /**
+   * Creates an object and populates it from the current row of the result set. Fields that have no
+   * column in the result set, or whose column is null, are left at their initial value.
+   *
+   * The columns are matched to fields by reading the result set metadata once per result set. The
+   * resulting plan is kept for the calling thread until it maps from a different result set, so
+   * each row is read by column index and a field without a column costs nothing.
+   *
+   * @param rs The result set, positioned on the row to map.
+   * @return The populated object.
+   */
+  T map(ResultSet rs) {
+    try {
+      return map(rs, planFor(rs));
+    }
+    catch(SQLException e) {
+      throw new DaoBase.DaoException("Unable to read the columns for " + classType.getName(), e);
+    }
+  }
+
+  private T map(ResultSet rs, int[] columnIndexes) {
+    try {
+      @SuppressWarnings("unchecked")
+      T obj = (T)constructor.invokeExact();
+
+      for(int pos = 0; pos < fields.length; pos++) {
+        int columnIndex = columnIndexes[pos];
+
+        if(columnIndex == 0) {
+          continue;
+        }
+
+        Object fieldValue = rs.getObject(columnIndex);
+
+        if(Objects.nonNull(fieldValue)) {
+          FieldMapping mapping = fields[pos];
+          mapping.setter.invokeExact((Object)obj, mapping.convert(fieldValue));
+        }
+      }
+
+      return obj;
+    }
+    catch(Throwable e) {
+      throw new DaoBase.DaoException("Unable to create object of type " + classType.getName(), e);
+    }
+  }
+
+  /**
+   * Returns the column plan for this class against the given result set, building it if the
+   * calling thread has not mapped this class from this result set yet.
+   */
+  private int[] planFor(ResultSet rs) throws SQLException {
+    BoundPlans bound = BOUND_PLANS.get();
+
+    if(bound.resultSet.get() != rs) {
+      bound.rebind(rs);
+    }
+
+    int[] plan = bound.plans.get(classType);
+
+    if(Objects.isNull(plan)) {
+      plan = buildPlan(bound.columns(rs));
+      bound.plans.put(classType, plan);
+    }
+
+    return plan;
+  }
+
+  /**
+   * Builds the one-based column index for each field, or zero if the result set has no column
+   * with the field's name.
+   */
+  private int[] buildPlan(Map<String, Integer> columns) {
+    int[] plan = new int[fields.length];
+
+    for(int pos = 0; pos < fields.length; pos++) {
+      Integer columnIndex = columns.get(fields[pos].columnName);
+      plan[pos] = Objects.isNull(columnIndex) ? 0 : columnIndex;
+    }
+
+    return plan;
+  }
+
+  /**
+   * The column plans for the result set most recently mapped on a thread, keyed by entity class.
+   * Only a weak reference to the result set is kept.
+   */
+  private static final class BoundPlans {
+    private WeakReference<ResultSet> resultSet = new WeakReference<>(null);
+    private Map<String, Integer> columns;
+    private final Map<Class<?>, int[]> plans = new IdentityHashMap<>();
+
+    void rebind(ResultSet rs) {
+      resultSet = new WeakReference<>(rs);
+      columns = null;
+      plans.clear();
+    }
+
+    /**
+     * Reads the column labels from the metadata. As with {@link ResultSet#findColumn(String)},
+     * labels are matched without regard to case and the first of several equal labels wins.
+     */
+    Map<String, Integer> columns(ResultSet rs) throws SQLException {
+      if(Objects.isNull(columns)) {
+        ResultSetMetaData meta = rs.getMetaData();
+        int count = meta.getColumnCount();
+
+        columns = new HashMap<>(count * 2);
+
+        for(int index = 1; index <= count; index++) {
+          columns.putIfAbsent(meta.getColumnLabel(index).toLowerCase(Locale.ROOT), index);
+        }
+      }
+
+      return columns;
+    }
+  }
+
+  /**
+   * This converts a camel case value (rowInsertTime) to snake case (row_insert_time).
+   *
+   * @param identifier The name in camel case to convert.
+   * @return The name converted to snake case.
+   */
+  private static String camelCaseToSnakeCase(String identifier) {
+    StringBuilder nameBuilder = new StringBuilder();
+
+    for(char ch : identifier.toCharArray()) {
+      if(Character.isUpperCase(ch)) {
+        nameBuilder.append('_').append(Character.toLowerCase(ch));
+      }
+      else {
+        nameBuilder.append(ch);
+      }
+    }
+
+    return nameBuilder.toString();
+  }
+
+  /**
+   * The pre-computed mapping between one column and one field.
+   */
+  private static final class FieldMapping {
+    private final String columnName;
+    private final MethodHandle setter;
+    private final boolean toLocalTime;
+    private final boolean toLocalDateTime;
+
+    FieldMapping(String columnName, Class<?> fieldType, MethodHandle setter) {
+      this.columnName = columnName;
+      this.setter = setter;
+      this.toLocalTime = LocalTime.class.equals(fieldType);
+      this.toLocalDateTime = LocalDateTime.class.equals(fieldType);
+    }
+
+    /**
+     * Convert the following types: Time -> LocalTime, and Timestamp -> LocalDateTime.
+     */
+    Object convert(Object value) {
+      if(toLocalTime && value instanceof Time) {
+        return ((Time)value).toLocalTime();
+      }
+
+      if(toLocalDateTime && value instanceof Timestamp) {
+        return ((Timestamp)value).toLocalDateTime();
+      }
+
+      return value;
+    }
+  }
+}
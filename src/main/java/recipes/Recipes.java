@@ -6,8 +6,10 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Scanner;
 
-import jdk.jfr.Category;
 import recipes.dao.DbConnection;
+import recipes.dao.FetchPlan;
+import recipes.dao.LoadResult;
+import recipes.entity.Category;
 import recipes.entity.Ingredient;
 import recipes.entity.Recipe;
 import recipes.entity.Step;
@@ -39,6 +41,8 @@ public class Recipes {
 
 	private void displayMenu() {
 		boolean done = false;
+		
+		preloadReferenceData();
 
 		while (!done) {
 			try {
@@ -87,6 +91,15 @@ public class Recipes {
 		} // end WHILE
 	}// end displayMenu
 
+	private void preloadReferenceData() {
+		try {
+			recipeService.preloadReferenceData();
+		}//end TRY
+		catch(DbException e) {
+			/* The tables may not have been created yet. They are loaded on first use instead. */
+		}//end CATCH
+	}//end METHOD preloadReferenceData
+
 	private void addCategoryToCurrentRecipe() {
 	    if (Objects.isNull(curRecipe)) {
 	      System.out.println("\nPlease select a recipe first.");
@@ -101,8 +114,12 @@ public class Recipes {
 	    String category = getStringInput("Enter the category to add");
 
 	    if (Objects.nonNull(category)) {
-	      recipeService.addCategoryToRecipe(curRecipe.getRecipeId(), category);
-	      curRecipe = recipeService.fetchRecipeById(curRecipe.getRecipeId());
+	      Integer recipeId = curRecipe.getRecipeId();
+
+	      curRecipe = recipeService.inTransaction(() -> {
+	        recipeService.addCategoryToRecipe(recipeId, category);
+	        return recipeService.fetchRecipeById(recipeId);
+	      });
 	    }//end IF nonNull
 	  }//end METHOD addCategoryToCurrentRecipe
 
@@ -120,8 +137,10 @@ public class Recipes {
 			step.setRecipeId(curRecipe.getRecipeId());
 			step.setStepText(stepText);
 			
-			recipeService.addStep(step);
-			curRecipe = recipeService.fetchRecipeById(step.getRecipeId());
+			curRecipe = recipeService.inTransaction(() -> {
+				recipeService.addStep(step);
+				return recipeService.fetchRecipeById(step.getRecipeId());
+			});
 		}//end METHOD addStepToCurrentRecipe
 		
 		
@@ -156,8 +175,10 @@ public class Recipes {
 		ingredient.setInstruction(instruction);
 		ingredient.setAmount(amount);
 		
-		recipeService.addIngredient(ingredient);
-		curRecipe = recipeService.fetchRecipeById(ingredient.getRecipeId());
+		curRecipe = recipeService.inTransaction(() -> {
+			recipeService.addIngredient(ingredient);
+			return recipeService.fetchRecipeById(ingredient.getRecipeId());
+		});
 		
 	}//end METHOD addIngredientToCurrentRecipe
 
@@ -181,7 +202,7 @@ public class Recipes {
 	}//end METHOD setCurrentRecipe
 
 	private List<Recipe> listRecipes() {
-		List<Recipe> recipes = recipeService.fetchRecipes();
+		List<Recipe> recipes = recipeService.fetchRecipes(FetchPlan.SUMMARY);
 		
 		System.out.println("\nRecipes:");
 		
@@ -223,12 +244,13 @@ public class Recipes {
 	}//end METHOD minutesToLocalTime
 
 	private void createTables() {
-		recipeService.createAndPopulateTables();
-		System.out.println("\nTables created and populated");
+		LoadResult result = recipeService.createAndPopulateTables(null);
+		System.out.println("\nTables created and populated. " + result);
 	}//end METHOD createTables
 
 	private boolean exitMenu() {
 		System.out.println("\nExiting the menu");
+		DbConnection.shutdown();
 		return true;
 	}//end METHOD exitMenu
 
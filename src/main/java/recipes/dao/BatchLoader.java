@@ -0,0 +1,409 @@
+package recipes.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import provided.util.DaoBase;
+import recipes.exception.DbException;
+
+/**
+ * Loads a stream of SQL statements, such as a seed script, faster than running them one by one in
+ * a single transaction.
+ *
+ * INSERT statements are collected per table, up to a window of WINDOW_STATEMENTS statements or
+ * WINDOW_CHARS characters. When the window is full the collected tables are loaded in foreign key
+ * order, read from information_schema: tables that do not depend on each other are loaded at the
+ * same time on separate pooled connections, and a table is only started once every table it
+ * references has been committed. Within a table, statements keep their order, consecutive
+ * single-row INSERTs with the same column list are merged into multi-row INSERTs, and the
+ * transaction is committed every commitEvery statements.
+ *
+ * Any other statement (DDL, UPDATE, SET and so on) is a barrier: everything collected so far is
+ * loaded first, then the statement is run on its own. Session settings made by such a statement
+ * apply only to the connection it ran on, not to the connections the tables are loaded on.
+ */
+class BatchLoader extends DaoBase {
+	private static final int WINDOW_STATEMENTS = 10_000;
+	private static final long WINDOW_CHARS = 16L * 1024 * 1024;
+	private static final int MAX_STATEMENT_CHARS = 1024 * 1024;
+
+	// @formatter:off
+	private static final Pattern INSERT_HEAD = Pattern.compile(""
+			+ "^INSERT\\s+INTO\\s+(`[^`]+`|[\\w$]+)\\s*(\\([^)]*\\))?\\s*VALUES\\s*",
+			Pattern.CASE_INSENSITIVE);
+
+	private static final String FETCH_FOREIGN_KEYS_SQL = ""
+			+ "SELECT table_name, referenced_table_name "
+			+ "FROM information_schema.key_column_usage "
+			+ "WHERE table_schema = DATABASE() AND referenced_table_name IS NOT NULL";
+	// @formatter:on
+
+	private final int commitEvery;
+	private final int parallelism;
+	private final Consumer<LoadResult> progress;
+	private final LoadResult result = new LoadResult();
+
+	private final Map<String, List<String>> pending = new LinkedHashMap<>();
+	private int pendingStatements;
+	private long pendingChars;
+	private Map<String, Set<String>> parents;
+
+	BatchLoader(int commitEvery, int parallelism, Consumer<LoadResult> progress) {
+		if(commitEvery < 1 || parallelism < 1) {
+			throw new IllegalArgumentException("Invalid loader settings: commitEvery=" + commitEvery + ", parallelism=" + parallelism);
+		}//end IF
+
+		this.commitEvery = commitEvery;
+		this.parallelism = parallelism;
+		this.progress = progress;
+	}//end CONSTRUCTOR
+
+	LoadResult load(Iterator<String> statements) {
+		ExecutorService executor = newExecutor();
+
+		try {
+			while(statements.hasNext()) {
+				String sql = statements.next();
+				Matcher head = INSERT_HEAD.matcher(sql);
+
+				if(head.find()) {
+					pending.computeIfAbsent(tableName(head.group(1)), table -> new ArrayList<>()).add(sql);
+					pendingStatements++;
+					pendingChars += sql.length();
+
+					if(pendingStatements >= WINDOW_STATEMENTS || pendingChars >= WINDOW_CHARS) {
+						flush(executor);
+					}//end IF
+				}//end IF
+				else {
+					flush(executor);
+					executeAlone(sql);
+
+					/* The statement may have created or changed tables. */
+					parents = null;
+				}//end ELSE
+			}//end WHILE
+
+			flush(executor);
+			return result;
+		}//end TRY
+		finally {
+			executor.shutdown();
+		}//end FINALLY
+	}//end METHOD load
+
+	private ExecutorService newExecutor() {
+		AtomicInteger count = new AtomicInteger();
+
+		return Executors.newFixedThreadPool(parallelism, runnable -> {
+			Thread thread = new Thread(runnable, "batch-loader-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}//end METHOD newExecutor
+
+	/*
+	 * Loads every collected table, one dependency level at a time. All tables in a level are started
+	 * together and the next level waits for all of them.
+	 */
+	private void flush(ExecutorService executor) {
+		if(pending.isEmpty()) {
+			return;
+		}//end IF
+
+		if(Objects.isNull(parents)) {
+			parents = fetchForeignKeys();
+		}//end IF
+
+		try {
+			for(List<String> level : levelsOf(pending.keySet())) {
+				List<CompletableFuture<Void>> loads = new ArrayList<>();
+
+				for(String table : level) {
+					List<String> statements = pending.get(table);
+					loads.add(CompletableFuture.runAsync(() -> loadTable(statements), executor));
+				}//end FOR
+
+				try {
+					CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[0])).join();
+				}//end TRY
+				catch(CompletionException e) {
+					throw e.getCause() instanceof DbException ? (DbException)e.getCause() : new DbException(e.getCause());
+				}//end CATCH
+			}//end FOR
+		}//end TRY
+		finally {
+			pending.clear();
+			pendingStatements = 0;
+			pendingChars = 0;
+		}//end FINALLY
+	}//end METHOD flush
+
+	/*
+	 * Groups tables so that every table comes in a later level than the tables it references. Only
+	 * references between the tables being loaded matter; anything else is already committed.
+	 */
+	private List<List<String>> levelsOf(Set<String> tables) {
+		Map<String, Integer> levels = new HashMap<>();
+		List<List<String>> grouped = new ArrayList<>();
+
+		for(String table : tables) {
+			int level = levelOf(table, tables, levels, new HashSet<>());
+
+			while(grouped.size() <= level) {
+				grouped.add(new ArrayList<>());
+			}//end WHILE
+
+			grouped.get(level).add(table);
+		}//end FOR
+
+		return grouped;
+	}//end METHOD levelsOf
+
+	private int levelOf(String table, Set<String> tables, Map<String, Integer> levels, Set<String> visiting) {
+		Integer known = levels.get(table);
+
+		if(Objects.nonNull(known)) {
+			return known;
+		}//end IF
+
+		/* A reference cycle cannot be ordered; the table that closes it is treated as having no parents. */
+		if(!visiting.add(table)) {
+			return 0;
+		}//end IF
+
+		int level = 0;
+
+		for(String parent : parents.getOrDefault(table, Set.of())) {
+			if(!parent.equals(table) && tables.contains(parent)) {
+				level = Math.max(level, levelOf(parent, tables, levels, visiting) + 1);
+			}//end IF
+		}//end FOR
+
+		visiting.remove(table);
+		levels.put(table, level);
+		return level;
+	}//end METHOD levelOf
+
+	private void loadTable(List<String> statements) {
+		try(Connection conn = DbConnection.getConnection()){
+			startTransaction(conn);
+
+			try(Statement stmt = conn.createStatement()){
+				MultiRowInsert insert = new MultiRowInsert();
+				int uncommitted = 0;
+				long rows = 0;
+
+				for(String sql : statements) {
+					if(!insert.tryAppend(sql)) {
+						rows += insert.execute(stmt);
+						insert.start(sql);
+					}//end IF
+
+					if(++uncommitted >= commitEvery) {
+						rows += insert.execute(stmt);
+						commit(conn, uncommitted, rows);
+						uncommitted = 0;
+						rows = 0;
+					}//end IF
+				}//end FOR
+
+				rows += insert.execute(stmt);
+
+				if(uncommitted > 0) {
+					commit(conn, uncommitted, rows);
+				}//end IF
+			}//end TRY stmt
+			catch(Exception e) {
+				rollbackTransaction(conn);
+				throw new DbException(e);
+			}//end CATCH stmt
+		}//end TRY conn
+		catch (SQLException e) {
+			throw new DbException(e);
+		}//end CATCH conn
+	}//end METHOD loadTable
+
+	private void commit(Connection conn, int statementCount, long rowCount) throws SQLException {
+		commitTransaction(conn);
+		DbConnection.recordWrite();
+		result.committed(statementCount, rowCount);
+
+		if(Objects.nonNull(progress)) {
+			synchronized(result) {
+				progress.accept(result);
+			}//end SYNCHRONIZED
+		}//end IF
+	}//end METHOD commit
+
+	private void executeAlone(String sql) {
+		try(Connection conn = DbConnection.getConnection()){
+			try(Statement stmt = conn.createStatement()){
+				stmt.execute(sql);
+				int updated = stmt.getUpdateCount();
+
+				DbConnection.recordWrite();
+				result.committed(1, Math.max(updated, 0));
+			}//end TRY stmt
+		}//end TRY conn
+		catch (SQLException e) {
+			throw new DbException("Unable to execute: " + sql, e);
+		}//end CATCH conn
+	}//end METHOD executeAlone
+
+	private Map<String, Set<String>> fetchForeignKeys() {
+		try(Connection conn = DbConnection.getConnection()){
+			try(PreparedStatement stmt = conn.prepareStatement(FETCH_FOREIGN_KEYS_SQL)){
+				try(ResultSet rs = stmt.executeQuery()){
+					Map<String, Set<String>> references = new HashMap<>();
+
+					while(rs.next()) {
+						references.computeIfAbsent(tableName(rs.getString(1)), table -> new HashSet<>())
+								.add(tableName(rs.getString(2)));
+					}//end WHILE
+
+					return references;
+				}//end TRY rs
+			}//end TRY stmt
+		}//end TRY conn
+		catch (SQLException e) {
+			throw new DbException(e);
+		}//end CATCH conn
+	}//end METHOD fetchForeignKeys
+
+	private static String tableName(String identifier) {
+		String name = identifier.startsWith("`") ? identifier.substring(1, identifier.length() - 1) : identifier;
+		return name.toLowerCase(Locale.ROOT);
+	}//end METHOD tableName
+
+	/**
+	 * A multi-row INSERT being built from consecutive single-statement INSERTs into the same table
+	 * with the same column list.
+	 */
+	static class MultiRowInsert {
+		private final StringBuilder sql = new StringBuilder();
+		private String head;
+
+		/*
+		 * Adds the statement's rows if it can be merged, which needs an empty builder or the same
+		 * INSERT ... VALUES prefix, nothing but row tuples after VALUES, and room under the size limit.
+		 */
+		boolean tryAppend(String statement) {
+			Matcher matcher = INSERT_HEAD.matcher(statement);
+
+			if(!matcher.find()) {
+				return false;
+			}//end IF
+
+			String statementHead = statement.substring(0, matcher.end());
+			String rows = statement.substring(matcher.end());
+
+			if(sql.length() == 0) {
+				return false;
+			}//end IF
+
+			if(!statementHead.equals(head) || !isRowList(rows) || sql.length() + rows.length() + 2 > MAX_STATEMENT_CHARS) {
+				return false;
+			}//end IF
+
+			sql.append(", ").append(rows);
+			return true;
+		}//end METHOD tryAppend
+
+		void start(String statement) {
+			sql.setLength(0);
+			sql.append(statement);
+
+			Matcher matcher = INSERT_HEAD.matcher(statement);
+			boolean mergeable = matcher.find() && isRowList(statement.substring(matcher.end()));
+			head = mergeable ? statement.substring(0, matcher.end()) : null;
+		}//end METHOD start
+
+		/*
+		 * Runs the built statement, if any, and returns the number of rows it inserted.
+		 */
+		long execute(Statement stmt) throws SQLException {
+			if(sql.length() == 0) {
+				return 0;
+			}//end IF
+
+			try {
+				return stmt.executeUpdate(sql.toString());
+			}//end TRY
+			finally {
+				sql.setLength(0);
+				head = null;
+			}//end FINALLY
+		}//end METHOD execute
+
+		/*
+		 * True if text is one or more parenthesized tuples separated by commas, and nothing else. Quotes
+		 * are tracked so that parentheses and commas inside string literals are ignored.
+		 */
+		static boolean isRowList(String text) {
+			int depth = 0;
+			char quote = 0;
+			boolean expectTuple = true;
+
+			for(int pos = 0; pos < text.length(); pos++) {
+				char ch = text.charAt(pos);
+
+				if(quote != 0) {
+					if(ch == '\\' && quote != '`') {
+						pos++;
+					}//end IF
+					else if(ch == quote) {
+						quote = 0;
+					}//end ELSE IF
+				}//end IF
+				else if(ch == '\'' || ch == '"' || ch == '`') {
+					quote = ch;
+				}//end ELSE IF
+				else if(ch == '(') {
+					if(depth == 0 && !expectTuple) {
+						return false;
+					}//end IF
+
+					depth++;
+					expectTuple = false;
+				}//end ELSE IF
+				else if(ch == ')') {
+					if(--depth < 0) {
+						return false;
+					}//end IF
+				}//end ELSE IF
+				else if(depth == 0) {
+					if(ch == ',' && !expectTuple) {
+						expectTuple = true;
+					}//end IF
+					else if(!Character.isWhitespace(ch)) {
+						return false;
+					}//end ELSE IF
+				}//end ELSE IF
+			}//end FOR
+
+			return depth == 0 && quote == 0 && !expectTuple;
+		}//end METHOD isRowList
+	}//end CLASS MultiRowInsert
+}//end CLASS
@@ -0,0 +1,417 @@
+package recipes.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pool of physical MySQL connections. Callers borrow a connection with
+ * {@link #borrow()} and give it back by calling {@link Connection#close()} on the returned handle,
+ * so the existing try-with-resources blocks in the DAO work unchanged.
+ *
+ * The pool keeps at least minSize connections open and never more than maxSize. Idle connections
+ * above the minimum are closed by a housekeeping thread after idleTimeoutMillis. Connections that
+ * have been idle for a while are validated before they are handed out, and connections held longer
+ * than leakThresholdMillis are reported along with the stack trace of the code that borrowed them.
+ * Capturing that trace costs a stack walk per borrow, so a threshold of zero turns leak detection
+ * off and no trace is taken.
+ *
+ * Each connection keeps up to statementCacheSize prepared statements open across borrows (see
+ * {@link StatementCache}). A size of zero turns the cache off.
+ */
+public class ConnectionPool {
+	private static final long HOUSEKEEPING_INTERVAL_MILLIS = 5_000;
+	private static final long VALIDATION_BYPASS_MILLIS = 500;
+	private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+	private final String url;
+	private final int minSize;
+	private final int maxSize;
+	private final long borrowTimeoutMillis;
+	private final long idleTimeoutMillis;
+	private final long leakThresholdMillis;
+	private final int statementCacheSize;
+	private final StatementCache.Counters statementCounters = new StatementCache.Counters();
+
+	private final Semaphore permits;
+	private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+	private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+	private final ScheduledExecutorService housekeeper;
+	private volatile boolean closed;
+
+	public ConnectionPool(String url, int minSize, int maxSize, long borrowTimeoutMillis,
+			long idleTimeoutMillis, long leakThresholdMillis, int statementCacheSize) {
+		if(minSize < 0 || maxSize < 1 || minSize > maxSize) {
+			throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+		}//end IF
+
+		this.url = url;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.leakThresholdMillis = leakThresholdMillis;
+		this.statementCacheSize = statementCacheSize;
+		this.permits = new Semaphore(maxSize, true);
+
+		housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		housekeeper.scheduleWithFixedDelay(this::houseKeep, 0, HOUSEKEEPING_INTERVAL_MILLIS,
+				TimeUnit.MILLISECONDS);
+	}//end CONSTRUCTOR
+
+	/**
+	 * Borrows a connection from the pool, opening a new one if the pool is not yet at its maximum
+	 * size. Waits up to borrowTimeoutMillis for a connection to be returned if it is.
+	 */
+	public Connection borrow() throws SQLException {
+		if(closed) {
+			throw new SQLException("Connection pool is closed");
+		}//end IF
+
+		try {
+			if(!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				throw new SQLException("Timed out after " + borrowTimeoutMillis
+						+ "ms waiting for a connection (pool size " + maxSize + ")");
+			}//end IF
+		}//end TRY
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted waiting for a connection", e);
+		}//end CATCH
+
+		return checkOut();
+	}//end METHOD borrow
+
+	/**
+	 * Borrows a connection without waiting. Returns null if every connection is in use and the pool
+	 * is at its maximum size, so the caller can go elsewhere; an SQLException means a connection
+	 * could not be opened.
+	 */
+	public Connection tryBorrow() throws SQLException {
+		if(closed) {
+			throw new SQLException("Connection pool is closed");
+		}//end IF
+
+		if(!permits.tryAcquire()) {
+			return null;
+		}//end IF
+
+		return checkOut();
+	}//end METHOD tryBorrow
+
+	/*
+	 * Hands out a connection once the caller holds a permit, giving the permit back if none can be
+	 * had.
+	 */
+	private Connection checkOut() throws SQLException {
+		try {
+			PooledConnection pooled = takeIdleOrCreate();
+
+			pooled.borrowedAt = System.currentTimeMillis();
+			pooled.borrowedBy = leakThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null;
+			pooled.leakReported = false;
+			borrowed.add(pooled);
+
+			return pooled.newHandle();
+		}//end TRY
+		catch(SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}//end CATCH
+	}//end METHOD checkOut
+
+	private PooledConnection takeIdleOrCreate() throws SQLException {
+		PooledConnection pooled;
+
+		while((pooled = idle.pollFirst()) != null) {
+			if(isUsable(pooled)) {
+				return pooled;
+			}//end IF
+
+			closeQuietly(pooled);
+		}//end WHILE
+
+		return new PooledConnection(DriverManager.getConnection(url));
+	}//end METHOD takeIdleOrCreate
+
+	/*
+	 * A connection that was used a moment ago is assumed to be alive; this keeps the validation
+	 * round trip off the path of back-to-back DAO calls.
+	 */
+	private boolean isUsable(PooledConnection pooled) {
+		try {
+			if(pooled.physical.isClosed()) {
+				return false;
+			}//end IF
+
+			if(System.currentTimeMillis() - pooled.lastUsed < VALIDATION_BYPASS_MILLIS) {
+				return true;
+			}//end IF
+
+			return pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+		}//end TRY
+		catch(SQLException e) {
+			return false;
+		}//end CATCH
+	}//end METHOD isUsable
+
+	private void giveBack(PooledConnection pooled) {
+		borrowed.remove(pooled);
+		pooled.lastUsed = System.currentTimeMillis();
+
+		try {
+			if(Objects.nonNull(pooled.statements)) {
+				pooled.statements.closeOpenStatements();
+			}//end IF
+
+			if(closed || pooled.physical.isClosed()) {
+				closeQuietly(pooled);
+			}//end IF
+			else {
+				reset(pooled);
+				idle.offerFirst(pooled);
+			}//end ELSE
+		}//end TRY
+		catch(SQLException e) {
+			closeQuietly(pooled);
+		}//end CATCH
+		finally {
+			permits.release();
+		}//end FINALLY
+	}//end METHOD giveBack
+
+	/*
+	 * Anything the DAO left behind must not leak into the next borrower. A transaction left open by
+	 * a failed method is rolled back, and a read-only flag or isolation level set by the borrower is
+	 * put back.
+	 */
+	private void reset(PooledConnection pooled) throws SQLException {
+		Connection conn = pooled.physical;
+		
+		if(!conn.getAutoCommit()) {
+			conn.rollback();
+			conn.setAutoCommit(true);
+		}//end IF
+		
+		if(pooled.sessionChanged) {
+			conn.setReadOnly(false);
+			conn.setTransactionIsolation(pooled.defaultIsolation);
+			pooled.sessionChanged = false;
+		}//end IF
+	}//end METHOD reset
+
+	private void houseKeep() {
+		try {
+			evictIdle();
+			reportLeaks();
+			fillToMinimum();
+		}//end TRY
+		catch(RuntimeException e) {
+			System.out.println("Connection pool housekeeping failed: " + e);
+		}//end CATCH
+	}//end METHOD houseKeep
+
+	private void evictIdle() {
+		long now = System.currentTimeMillis();
+		Iterator<PooledConnection> it = idle.descendingIterator();
+
+		while(it.hasNext() && idle.size() + borrowed.size() > minSize) {
+			PooledConnection pooled = it.next();
+
+			if(now - pooled.lastUsed > idleTimeoutMillis && idle.removeFirstOccurrence(pooled)) {
+				closeQuietly(pooled);
+			}//end IF
+		}//end WHILE
+	}//end METHOD evictIdle
+
+	private void reportLeaks() {
+		if(leakThresholdMillis <= 0) {
+			return;
+		}//end IF
+
+		long now = System.currentTimeMillis();
+
+		for(PooledConnection pooled : borrowed) {
+			if(!pooled.leakReported && now - pooled.borrowedAt > leakThresholdMillis) {
+				pooled.leakReported = true;
+				System.out.println("Possible connection leak: connection held for "
+						+ (now - pooled.borrowedAt) + "ms");
+
+				if(Objects.nonNull(pooled.borrowedBy)) {
+					pooled.borrowedBy.printStackTrace(System.out);
+				}//end IF
+			}//end IF
+		}//end FOR
+	}//end METHOD reportLeaks
+
+	private void fillToMinimum() {
+		while(!closed && idle.size() + borrowed.size() < minSize && permits.tryAcquire()) {
+			try {
+				PooledConnection pooled = new PooledConnection(DriverManager.getConnection(url));
+				idle.offerLast(pooled);
+			}//end TRY
+			catch(SQLException e) {
+				/* The database may not be up yet. Try again on the next pass. */
+				return;
+			}//end CATCH
+			finally {
+				permits.release();
+			}//end FINALLY
+		}//end WHILE
+	}//end METHOD fillToMinimum
+
+	/**
+	 * Closes all idle connections and stops the housekeeping thread. Borrowed connections are closed
+	 * as they are returned.
+	 */
+	public void close() {
+		closed = true;
+		housekeeper.shutdownNow();
+
+		PooledConnection pooled;
+
+		while((pooled = idle.pollFirst()) != null) {
+			closeQuietly(pooled);
+		}//end WHILE
+	}//end METHOD close
+
+	public int getIdleCount() {
+		return idle.size();
+	}//end METHOD getIdleCount
+
+	public int getActiveCount() {
+		return borrowed.size();
+	}//end METHOD getActiveCount
+
+	public StatementCacheStats getStatementCacheStats() {
+		return statementCounters.snapshot(statementCacheSize);
+	}//end METHOD getStatementCacheStats
+
+	private void closeQuietly(PooledConnection pooled) {
+		if(Objects.nonNull(pooled.statements)) {
+			pooled.statements.discard();
+		}//end IF
+
+		try {
+			pooled.physical.close();
+		}//end TRY
+		catch(SQLException e) {
+			/* The connection is being discarded anyway. */
+		}//end CATCH
+	}//end METHOD closeQuietly
+
+	/**
+	 * A physical connection plus the bookkeeping the pool needs for it.
+	 */
+	private class PooledConnection {
+		private final Connection physical;
+		private volatile long lastUsed = System.currentTimeMillis();
+		private volatile long borrowedAt;
+		private volatile Throwable borrowedBy;
+		private volatile boolean leakReported;
+		private final int defaultIsolation;
+		private volatile boolean sessionChanged;
+		private final StatementCache statements;
+
+		PooledConnection(Connection physical) throws SQLException {
+			this.physical = physical;
+			this.defaultIsolation = physical.getTransactionIsolation();
+			this.statements = statementCacheSize > 0
+					? new StatementCache(physical, statementCacheSize, statementCounters)
+					: null;
+		}//end CONSTRUCTOR
+
+		/*
+		 * Each borrow gets its own handle, so a caller that closes its handle and keeps using it cannot
+		 * touch a connection that has since been lent to somebody else.
+		 */
+		Connection newHandle() {
+			return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] {Connection.class}, new Handle(this));
+		}//end METHOD newHandle
+	}//end CLASS PooledConnection
+
+	/**
+	 * The {@link Connection} given to callers. Closing it returns the physical connection to the
+	 * pool and prepareStatement goes through the statement cache; everything else is passed through.
+	 */
+	private class Handle implements InvocationHandler {
+		private PooledConnection pooled;
+
+		Handle(PooledConnection pooled) {
+			this.pooled = pooled;
+		}//end CONSTRUCTOR
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch(method.getName()) {
+				case "close":
+					synchronized(this) {
+						if(Objects.nonNull(pooled)) {
+							PooledConnection returning = pooled;
+							pooled = null;
+							giveBack(returning);
+						}//end IF
+					}//end SYNCHRONIZED
+					return null;
+
+				case "setReadOnly":
+				case "setTransactionIsolation":
+					if(Objects.nonNull(pooled)) {
+						pooled.sessionChanged = true;
+					}//end IF
+					break;
+
+				case "isClosed":
+					return Objects.isNull(pooled) || pooled.physical.isClosed();
+
+				case "equals":
+					return proxy == args[0];
+
+				case "hashCode":
+					return System.identityHashCode(proxy);
+
+				case "toString":
+					return "Pooled" + (Objects.isNull(pooled) ? "[closed]" : pooled.physical.toString());
+
+				default:
+					break;
+			}//end SWITCH
+
+			PooledConnection current = pooled;
+
+			if(Objects.isNull(current)) {
+				throw new SQLException("Connection is closed");
+			}//end IF
+
+			if(Objects.nonNull(current.statements) && StatementCache.isCacheable(method)) {
+				return current.statements.prepare((Connection)proxy, method, args);
+			}//end IF
+
+			try {
+				return method.invoke(current.physical, args);
+			}//end TRY
+			catch(InvocationTargetException e) {
+				throw e.getCause();
+			}//end CATCH
+		}//end METHOD invoke
+	}//end CLASS Handle
+}//end CLASS
@@ -0,0 +1,262 @@
+package recipes.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * The JDK Flight Recorder event for one DAO operation, which is one use of a connection from
+ * {@link DbConnection}: it starts when the connection is asked for and ends when it is closed. The
+ * event records the calling method, the first SQL statement it prepared, how many statements it
+ * prepared and rows it mapped, and how the time divides between waiting for the connection,
+ * executing statements and mapping rows. Time not in those three is spent in the driver reading
+ * results, binding parameters and committing.
+ *
+ * To time the executes, the connection and its statements are wrapped, but only while a recording
+ * has the event enabled; otherwise DbConnection hands out connections untouched.
+ *
+ * Inside a {@link UnitOfWork} each DAO method still gets its own event, nested inside the event for
+ * the unit of work's connection.
+ */
+@Name(DaoOperationEvent.NAME)
+@Label("DAO Operation")
+@Category({"Recipes", "Database"})
+@Description("A DAO method's use of one connection, from asking for it to closing it")
+@StackTrace(false)
+@Threshold("10 ms")
+public final class DaoOperationEvent extends Event {
+	public static final String NAME = "recipes.DaoOperation";
+
+	private static final int SQL_LABEL_LENGTH = 200;
+	private static final Set<String> INFRASTRUCTURE = Set.of(DbConnection.class.getName(), DaoOperationEvent.class.getName());
+	private static final StackWalker WALKER = StackWalker.getInstance();
+
+	/* The innermost operation running on each thread, which rows mapped on the thread are added to. */
+	private static final ThreadLocal<DaoOperationEvent> CURRENT = new ThreadLocal<>();
+
+	@Label("Operation")
+	@Description("The class and method that asked for the connection")
+	String operation;
+
+	@Label("SQL")
+	@Description("The first statement the operation prepared")
+	String sql;
+
+	@Label("Statements")
+	int statements;
+
+	@Label("Rows")
+	@Description("Rows mapped to entities")
+	int rows;
+
+	@Label("Acquire Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long acquireTime;
+
+	@Label("Execute Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long executeTime;
+
+	@Label("Mapping Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long mappingTime;
+
+	private transient DaoOperationEvent outer;
+	private transient boolean finished;
+
+	private DaoOperationEvent() {
+	}//end CONSTRUCTOR
+
+	/*
+	 * Gets a connection from source, wrapped in an operation event if a recording has the event
+	 * enabled.
+	 */
+	static Connection profile(Supplier<Connection> source) {
+		DaoOperationEvent event = new DaoOperationEvent();
+
+		if(!event.isEnabled()) {
+			return source.get();
+		}//end IF
+
+		event.begin();
+		event.operation = WALKER.walk(frames -> frames
+				.filter(frame -> !INFRASTRUCTURE.contains(frame.getClassName()))
+				.findFirst()
+				.map(frame -> simpleName(frame.getClassName()) + "." + frame.getMethodName())
+				.orElse("unknown"));
+		event.outer = CURRENT.get();
+		CURRENT.set(event);
+
+		long start = System.nanoTime();
+		Connection conn;
+
+		try {
+			conn = source.get();
+		}//end TRY
+		catch(RuntimeException e) {
+			event.finish();
+			throw e;
+		}//end CATCH
+
+		event.acquireTime = System.nanoTime() - start;
+		return wrap(Connection.class, event.new ConnectionTracker(conn));
+	}//end METHOD profile
+
+	/**
+	 * Adds rows mapped on this thread to the operations running on it.
+	 */
+	static void rowsMapped(int rows, long elapsedNanos) {
+		for(DaoOperationEvent event = CURRENT.get(); Objects.nonNull(event); event = event.outer) {
+			event.rows += rows;
+			event.mappingTime += elapsedNanos;
+		}//end FOR
+	}//end METHOD rowsMapped
+
+	private void finish() {
+		if(finished) {
+			return;
+		}//end IF
+
+		finished = true;
+
+		/* A stream may be closed after later operations on its thread, or on another thread. */
+		if(CURRENT.get() == this) {
+			if(Objects.isNull(outer)) {
+				CURRENT.remove();
+			}//end IF
+			else {
+				CURRENT.set(outer);
+			}//end ELSE
+		}//end IF
+
+		end();
+
+		if(shouldCommit()) {
+			commit();
+		}//end IF
+	}//end METHOD finish
+
+	private void prepared(Object sqlText) {
+		statements++;
+
+		if(Objects.isNull(sql) && sqlText instanceof String) {
+			String text = (String)sqlText;
+			sql = text.length() <= SQL_LABEL_LENGTH ? text : text.substring(0, SQL_LABEL_LENGTH) + "...";
+		}//end IF
+	}//end METHOD prepared
+
+	private static String simpleName(String className) {
+		return className.substring(className.lastIndexOf('.') + 1);
+	}//end METHOD simpleName
+
+	private static <T> T wrap(Class<T> type, InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler));
+	}//end METHOD wrap
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		}//end TRY
+		catch(InvocationTargetException e) {
+			throw e.getCause();
+		}//end CATCH
+	}//end METHOD invoke
+
+	/**
+	 * Ends the event when the connection is closed and wraps the statements it creates.
+	 */
+	private class ConnectionTracker implements InvocationHandler {
+		private final Connection conn;
+
+		ConnectionTracker(Connection conn) {
+			this.conn = conn;
+		}//end CONSTRUCTOR
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch(method.getName()) {
+				case "close":
+					try {
+						conn.close();
+					}//end TRY
+					finally {
+						finish();
+					}//end FINALLY
+					return null;
+
+				case "prepareStatement":
+				case "prepareCall":
+				case "createStatement":
+					Object statement = DaoOperationEvent.invoke(conn, method, args);
+					prepared(Objects.isNull(args) ? null : args[0]);
+					return wrap(method.getReturnType(), new StatementTracker(proxy, statement));
+
+				case "equals":
+					return proxy == args[0];
+
+				case "hashCode":
+					return System.identityHashCode(proxy);
+
+				default:
+					return DaoOperationEvent.invoke(conn, method, args);
+			}//end SWITCH
+		}//end METHOD invoke
+	}//end CLASS ConnectionTracker
+
+	/**
+	 * Adds the time spent in execute calls to the event.
+	 */
+	private class StatementTracker implements InvocationHandler {
+		private final Object connection;
+		private final Object statement;
+
+		StatementTracker(Object connection, Object statement) {
+			this.connection = connection;
+			this.statement = statement;
+		}//end CONSTRUCTOR
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+
+			if(name.startsWith("execute")) {
+				long start = System.nanoTime();
+
+				try {
+					return DaoOperationEvent.invoke(statement, method, args);
+				}//end TRY
+				finally {
+					executeTime += System.nanoTime() - start;
+				}//end FINALLY
+			}//end IF
+
+			switch(name) {
+				case "getConnection":
+					return connection;
+
+				case "equals":
+					return proxy == args[0];
+
+				case "hashCode":
+					return System.identityHashCode(proxy);
+
+				default:
+					return DaoOperationEvent.invoke(statement, method, args);
+			}//end SWITCH
+		}//end METHOD invoke
+	}//end CLASS StatementTracker
+}//end CLASS
@@ -1,8 +1,9 @@
 package recipes.dao;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Objects;
+import java.util.function.Supplier;
 
 import recipes.exception.DbException;
 
@@ -15,19 +16,182 @@ public class DbConnection {
 	private static final String HOST = "localhost";
 	private static final int PORT = 3306;
 
-	
+	private static final int POOL_MIN_SIZE = 2;
+	private static final int POOL_MAX_SIZE = 10;
+	private static final long BORROW_TIMEOUT_MILLIS = 30_000;
+	private static final long IDLE_TIMEOUT_MILLIS = 10 * 60_000;
+
+	/*
+	 * Leak detection records a stack trace on every borrow, so it is off unless asked for with
+	 * -Drecipes.leakThresholdMillis (60000 is a sensible value while hunting a leak).
+	 */
+	private static final long LEAK_THRESHOLD_MILLIS = Long.getLong("recipes.leakThresholdMillis", 0);
+
+	/*
+	 * Prepared statements kept open per connection. RecipeDao uses about a hundred distinct
+	 * statements, counting each IN-list size and fetch plan. Set -Drecipes.statementCacheSize to
+	 * size it from the hit rate; 0 turns the cache off.
+	 */
+	private static final int STATEMENT_CACHE_SIZE = Integer.getInteger("recipes.statementCacheSize", 128);
+
+	/*
+	 * The read replica is configured with system properties. It is used if any of host, port or
+	 * schema is set; the others default to the primary's. For a local test, a second schema on the
+	 * same server (-Drecipes.replica.schema=recipes_replica) or a second server
+	 * (-Drecipes.replica.port=3307) both work.
+	 */
+	private static final String REPLICA_PROPERTY_PREFIX = "recipes.replica.";
+	private static final long DEFAULT_READ_YOUR_WRITES_MILLIS = 2_000;
+	private static final long REPLICA_RETRY_MILLIS = 30_000;
+
+	private static final ConnectionPool POOL = new ConnectionPool(buildUrl(HOST, PORT, SCHEMA, USER, PASSWORD),
+			POOL_MIN_SIZE, POOL_MAX_SIZE, BORROW_TIMEOUT_MILLIS, IDLE_TIMEOUT_MILLIS, LEAK_THRESHOLD_MILLIS,
+			STATEMENT_CACHE_SIZE);
+	private static final ConnectionPool REPLICA_POOL = buildReplicaPool();
+	private static final long READ_YOUR_WRITES_MILLIS =
+			Long.getLong(REPLICA_PROPERTY_PREFIX + "readYourWritesMillis", DEFAULT_READ_YOUR_WRITES_MILLIS);
+
+	/* Set while a caller needs reads that are at least as new as the primary. */
+	private static final ThreadLocal<Boolean> PRIMARY_READS = new ThreadLocal<>();
+
+	private static volatile long lastWriteMillis;
+	private static volatile long replicaDownUntilMillis;
+
+	private static String buildUrl(String host, int port, String schema, String user, String password) {
+		return String.format("jdbc:mysql://%s:%d/%s?user=%s&password=%s&useSSL=false&allowMultiQueries=true&rewriteBatchedStatements=true&useServerPrepStmts=true", host, port, schema, user, password);
+	}//end METHOD buildUrl
+
+	private static ConnectionPool buildReplicaPool() {
+		String host = System.getProperty(REPLICA_PROPERTY_PREFIX + "host");
+		Integer port = Integer.getInteger(REPLICA_PROPERTY_PREFIX + "port");
+		String schema = System.getProperty(REPLICA_PROPERTY_PREFIX + "schema");
+
+		if(Objects.isNull(host) && Objects.isNull(port) && Objects.isNull(schema)) {
+			return null;
+		}//end IF
+
+		String url = buildUrl(
+				Objects.isNull(host) ? HOST : host,
+				Objects.isNull(port) ? PORT : port,
+				Objects.isNull(schema) ? SCHEMA : schema,
+				System.getProperty(REPLICA_PROPERTY_PREFIX + "user", USER),
+				System.getProperty(REPLICA_PROPERTY_PREFIX + "password", PASSWORD));
+
+		return new ConnectionPool(url, POOL_MIN_SIZE, POOL_MAX_SIZE, BORROW_TIMEOUT_MILLIS,
+				IDLE_TIMEOUT_MILLIS, LEAK_THRESHOLD_MILLIS, STATEMENT_CACHE_SIZE);
+	}//end METHOD buildReplicaPool
+
+	/**
+	 * Borrows a connection from the pool. Closing the connection returns it to the pool. Inside a
+	 * {@link UnitOfWork} this returns the unit of work's connection instead.
+	 */
 	public static Connection getConnection() {
-		String url = String.format("jdbc:mysql://%s:%d/%s?user=%s&password=%s&useSSL=false", HOST, PORT, SCHEMA, USER, PASSWORD);
-		
-		//System.out.println("Connecting with url: " + url);
-		
+		return DaoOperationEvent.profile(DbConnection::borrow);
+	}
+
+	private static Connection borrow() {
+		Connection shared = UnitOfWork.currentConnection();
+
+		if(Objects.nonNull(shared)) {
+			return shared;
+		}//end IF
+
 		try {
-			Connection conn = DriverManager.getConnection(url);		//asked the driver to look up the connection for us
-			System.out.println("Successfully obtained connection!");//and asked driver to make the connection
-			return conn;
+			return POOL.borrow();
 		} catch (SQLException e) {
 			System.out.println("ERROR getting connection");
 			throw new DbException(e);
 		}
 	}
+
+	/**
+	 * Borrows a connection for reading. This is a replica connection if a replica is configured,
+	 * reachable and has a connection free, and the primary otherwise. For a short time after this process commits a write,
+	 * reads go to the primary as well, so that a caller reading back its own change does not miss it
+	 * because the replica is behind. Inside a {@link UnitOfWork} this returns the unit of work's
+	 * connection.
+	 */
+	public static Connection getReadConnection() {
+		return DaoOperationEvent.profile(DbConnection::borrowForRead);
+	}//end METHOD getReadConnection
+
+	private static Connection borrowForRead() {
+		Connection shared = UnitOfWork.currentConnection();
+
+		if(Objects.nonNull(shared)) {
+			return shared;
+		}//end IF
+
+		long now = System.currentTimeMillis();
+
+		if(Objects.isNull(REPLICA_POOL) || Objects.nonNull(PRIMARY_READS.get()) || now < replicaDownUntilMillis || now - lastWriteMillis < READ_YOUR_WRITES_MILLIS) {
+			return borrow();
+		}//end IF
+
+		/*
+		 * A busy replica pool is not a down replica: the read goes to the primary without waiting, and
+		 * the replica is tried again on the next read.
+		 */
+		try {
+			Connection conn = REPLICA_POOL.tryBorrow();
+			return Objects.nonNull(conn) ? conn : borrow();
+		}//end TRY
+		catch(SQLException e) {
+			/* Stop trying the replica for a while rather than paying for the failure on every read. */
+			replicaDownUntilMillis = now + REPLICA_RETRY_MILLIS;
+			System.out.println("Replica unavailable, reading from the primary: " + e.getMessage());
+			return borrow();
+		}//end CATCH
+	}//end METHOD borrowForRead
+
+	/**
+	 * Runs work with every read on this thread going to the primary. This is for reads that must
+	 * see a change another node has just committed, which the replica may not have applied yet.
+	 */
+	public static <T> T readFromPrimary(Supplier<T> work) {
+		if(Objects.nonNull(PRIMARY_READS.get())) {
+			return work.get();
+		}//end IF
+
+		PRIMARY_READS.set(Boolean.TRUE);
+
+		try {
+			return work.get();
+		}//end TRY
+		finally {
+			PRIMARY_READS.remove();
+		}//end FINALLY
+	}//end METHOD readFromPrimary
+
+	/**
+	 * Notes that a write was just committed, which sends reads to the primary for the
+	 * read-your-writes window.
+	 */
+	public static void recordWrite() {
+		lastWriteMillis = System.currentTimeMillis();
+	}//end METHOD recordWrite
+
+	public static boolean isReplicaConfigured() {
+		return Objects.nonNull(REPLICA_POOL);
+	}//end METHOD isReplicaConfigured
+
+	public static int getMaxPoolSize() {
+		return POOL_MAX_SIZE;
+	}//end METHOD getMaxPoolSize
+
+	/**
+	 * The prepared statement cache counters of the primary and replica pools together.
+	 */
+	public static StatementCacheStats getStatementCacheStats() {
+		StatementCacheStats stats = POOL.getStatementCacheStats();
+		return Objects.isNull(REPLICA_POOL) ? stats : stats.plus(REPLICA_POOL.getStatementCacheStats());
+	}//end METHOD getStatementCacheStats
+
+	public static void shutdown() {
+		POOL.close();
+
+		if(Objects.nonNull(REPLICA_POOL)) {
+			REPLICA_POOL.close();
+		}//end IF
+	}//end METHOD shutdown
 }
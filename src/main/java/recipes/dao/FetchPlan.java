@@ -0,0 +1,36 @@
+package recipes.dao;
+
+/**
+ * How much of a recipe a read should load. Each plan selects only the recipe columns it needs, so
+ * list screens do not pull the notes TEXT column, and only the full graph reads the child tables.
+ * Fields that are not selected are left null by extract().
+ */
+public enum FetchPlan {
+	/** ID, name, servings and times. Enough for a list screen. */
+	SUMMARY("recipe_id, recipe_name, num_servings, prep_time, cook_time", false),
+
+	/** Every recipe column, including notes and created_at, but no children. */
+	HEADER("*", false),
+
+	/** Every recipe column plus ingredients, steps and categories. */
+	FULL_GRAPH("*", true);
+
+	private final String recipeColumns;
+	private final boolean includesChildren;
+
+	private FetchPlan(String recipeColumns, boolean includesChildren) {
+		this.recipeColumns = recipeColumns;
+		this.includesChildren = includesChildren;
+	}
+
+	/**
+	 * The select list for the recipe table.
+	 */
+	public String getRecipeColumns() {
+		return recipeColumns;
+	}
+
+	public boolean includesChildren() {
+		return includesChildren;
+	}
+}
@@ -0,0 +1,15 @@
+package recipes.dao;
+
+/**
+ * How {@link RecipeDao#fetchRecipeById(Integer)} loads a recipe and its children.
+ */
+public enum GraphLoadMode {
+	/** One query for the recipe and one for each child table, in sequence. */
+	SEQUENTIAL,
+
+	/**
+	 * The recipe and child queries are sent together as one multi-statement request and read back as
+	 * consecutive result sets, so the whole graph costs one round trip.
+	 */
+	SINGLE_ROUND_TRIP
+}
@@ -0,0 +1,103 @@
+package recipes.dao;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Running totals for a bulk import from {@link RecipeDao#importRecipes}. The same object is passed
+ * to the progress listener after every chunk and returned at the end.
+ */
+public class ImportResult {
+	private final long startNanos = System.nanoTime();
+	private long endNanos;
+	private int imported;
+	private int chunks;
+	private final List<Failure> failures = new LinkedList<>();
+
+	void chunkCommitted(int recipeCount) {
+		imported += recipeCount;
+		chunks++;
+		endNanos = System.nanoTime();
+	}//end METHOD chunkCommitted
+
+	/*
+	 * A chunk that failed as a whole is retried one recipe at a time. Each recipe that goes in is
+	 * counted here, and the chunk itself is counted once, by chunkRetried, when the retry is done.
+	 */
+	void recipeCommitted() {
+		imported++;
+		endNanos = System.nanoTime();
+	}//end METHOD recipeCommitted
+
+	void chunkRetried() {
+		chunks++;
+		endNanos = System.nanoTime();
+	}//end METHOD chunkRetried
+
+	void recipeFailed(String recipeName, Exception cause) {
+		failures.add(new Failure(recipeName, cause));
+		endNanos = System.nanoTime();
+	}//end METHOD recipeFailed
+
+	public int getImported() {
+		return imported;
+	}
+
+	public int getFailed() {
+		return failures.size();
+	}
+
+	public int getChunks() {
+		return chunks;
+	}
+
+	public List<Failure> getFailures() {
+		return Collections.unmodifiableList(failures);
+	}
+
+	public long getElapsedMillis() {
+		return (Math.max(endNanos, startNanos) - startNanos) / 1_000_000;
+	}
+
+	/**
+	 * Recipes (with their children) committed per second so far.
+	 */
+	public double getRecipesPerSecond() {
+		long elapsedNanos = Math.max(endNanos, startNanos) - startNanos;
+		return elapsedNanos == 0 ? 0.0 : imported * 1_000_000_000.0 / elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Imported %d recipes in %d chunks (%d failed) in %dms, %.1f recipes/s",
+				imported, chunks, failures.size(), getElapsedMillis(), getRecipesPerSecond());
+	}
+
+	/**
+	 * A recipe that could not be imported and the reason why.
+	 */
+	public static class Failure {
+		private final String recipeName;
+		private final Exception cause;
+
+		Failure(String recipeName, Exception cause) {
+			this.recipeName = recipeName;
+			this.cause = cause;
+		}//end CONSTRUCTOR
+
+		public String getRecipeName() {
+			return recipeName;
+		}
+
+		public Exception getCause() {
+			return cause;
+		}
+
+		@Override
+		public String toString() {
+			return recipeName + ": " + cause;
+		}
+	}//end CLASS Failure
+
+}
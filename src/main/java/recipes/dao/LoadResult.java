@@ -0,0 +1,53 @@
+package recipes.dao;
+
+/**
+ * Running totals for a script load from {@link RecipeDao#executeBatch(java.util.Iterator, int,
+ * java.util.function.Consumer)}. The same object is passed to the progress listener after every
+ * commit and returned at the end. Tables are loaded on several threads, so the totals are updated
+ * under the object's lock.
+ */
+public class LoadResult {
+	private final long startNanos = System.nanoTime();
+	private long endNanos;
+	private long statements;
+	private long rows;
+	private int commits;
+
+	synchronized void committed(int statementCount, long rowCount) {
+		statements += statementCount;
+		rows += rowCount;
+		commits++;
+		endNanos = System.nanoTime();
+	}//end METHOD committed
+
+	public synchronized long getStatements() {
+		return statements;
+	}
+
+	public synchronized long getRows() {
+		return rows;
+	}
+
+	public synchronized int getCommits() {
+		return commits;
+	}
+
+	public synchronized long getElapsedMillis() {
+		return (Math.max(endNanos, startNanos) - startNanos) / 1_000_000;
+	}
+
+	/**
+	 * Rows committed per second so far.
+	 */
+	public synchronized double getRowsPerSecond() {
+		long elapsedNanos = Math.max(endNanos, startNanos) - startNanos;
+		return elapsedNanos == 0 ? 0.0 : rows * 1_000_000_000.0 / elapsedNanos;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("Loaded %d statements (%d rows) in %d commits in %dms, %.1f rows/s",
+				statements, rows, commits, getElapsedMillis(), getRowsPerSecond());
+	}
+
+}
@@ -1,22 +1,42 @@
 package recipes.dao;
 
-import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.time.LocalTime;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import provided.util.DaoBase;
+import provided.util.EntityBinder;
+import provided.util.OrderedChildTable;
 import recipes.entity.Category;
 import recipes.entity.Ingredient;
 import recipes.entity.Recipe;
+import recipes.entity.RecipeChange;
 import recipes.entity.Step;
 import recipes.entity.Unit;
 import recipes.exception.DbException;
@@ -30,33 +50,214 @@ public class RecipeDao extends DaoBase {
 	private static final String RECIPE_CATEGORY_TABLE = "recipe_category";
 	private static final String STEP_TABLE = "step";
 	private static final String UNIT_TABLE = "unit";
+	private static final String RECIPE_CHANGE_TABLE = "recipe_change";
+	private static final String RECIPE_CHANGE_EPOCH_TABLE = "recipe_change_epoch";
 	
+	private static final OrderedChildTable INGREDIENT_SEQUENCE =
+			new OrderedChildTable(INGREDIENT_TABLE, "ingredient_id", RECIPE_TABLE, "recipe_id", "ingredient_order");
+	private static final OrderedChildTable STEP_SEQUENCE =
+			new OrderedChildTable(STEP_TABLE, "step_id", RECIPE_TABLE, "recipe_id", "step_order");
+	
+	/* The most IDs bound into a single IN list by the batch fetch methods. */
+	private static final int ID_CHUNK_SIZE = 500;
+	
+	/* The most tables loaded at the same time by the parallel executeBatch. */
+	private static final int LOAD_PARALLELISM = 4;
+	
+	// @formatter:off
+	private static final String FETCH_RECIPE_SQL = ""
+			+ "SELECT * FROM " + RECIPE_TABLE + " WHERE recipe_id = ?";
+
+	private static final String FETCH_INGREDIENTS_SQL = ""
+			+ "SELECT i.*, u.unit_name_singular, u.unit_name_plural "
+			+ "FROM " + INGREDIENT_TABLE + " i "
+			+ "LEFT JOIN " + UNIT_TABLE + " u USING (unit_id) "
+			+ "WHERE i.recipe_id = ? "
+			+ "ORDER BY i.ingredient_order";
+
+	private static final String FETCH_STEPS_SQL = ""
+			+ "SELECT * FROM " + STEP_TABLE + " s WHERE s.recipe_id = ? "
+			+ "ORDER BY s.step_order";
+
+	private static final String FETCH_CATEGORIES_SQL = ""
+			+ "SELECT c.* "
+			+ "FROM " + RECIPE_CATEGORY_TABLE + " rc "
+			+ "JOIN " + CATEGORY_TABLE + " c USING (category_id) "
+			+ "WHERE recipe_id = ? "
+			+ "ORDER BY c.category_name";
+
+	/*
+	 * All four queries in one request. This needs allowMultiQueries on the connection URL; the
+	 * results come back in this order.
+	 */
+	private static final String FETCH_RECIPE_GRAPH_SQL = ""
+			+ FETCH_RECIPE_SQL + "; "
+			+ FETCH_INGREDIENTS_SQL + "; "
+			+ FETCH_STEPS_SQL + "; "
+			+ FETCH_CATEGORIES_SQL;
+	// @formatter:on
+
+	// @formatter:off
+	private static final String INSERT_RECIPE_SQL = ""
+			+ "INSERT INTO " + RECIPE_TABLE + " "
+			+ "(recipe_name, notes, num_servings, prep_time, cook_time) "
+			+ "VALUES "
+			+ "(?, ?, ?, ?, ?)";
+
+	private static final String INSERT_INGREDIENT_SQL = ""
+			+ "INSERT INTO " + INGREDIENT_TABLE + " "
+			+ "(recipe_id, unit_id, ingredient_name, instruction, ingredient_order, amount) "
+			+ "VALUES (?, ?, ?, ?, ?, ?)";
+
+	private static final String INSERT_STEP_SQL = ""
+			+ "INSERT INTO " + STEP_TABLE + " (recipe_id, step_order, step_text) "
+			+ "VALUES (?, ?, ?)";
+
+	private static final String INSERT_RECIPE_CATEGORY_SQL = ""
+			+ "INSERT INTO " + RECIPE_CATEGORY_TABLE + " (recipe_id, category_id) "
+			+ "VALUES (?, ?)";
+
+	private static final String INSERT_RECIPE_CHANGE_SQL = ""
+			+ "INSERT INTO " + RECIPE_CHANGE_TABLE + " (recipe_id) VALUES (?)";
+
+	private static final String INSERT_RECIPE_CATEGORY_BY_NAME_SQL = ""
+			+ "INSERT INTO " + RECIPE_CATEGORY_TABLE + " (recipe_id, category_id) "
+			+ "VALUES (?, (SELECT category_id FROM " + CATEGORY_TABLE + " WHERE category_name = ?))";
+	// @formatter:on
+
+	// @formatter:off
+	private static final String FETCH_ALL_UNITS_SQL = ""
+			+ "SELECT * FROM " + UNIT_TABLE + " ORDER BY unit_name_singular";
+
+	private static final String FETCH_ALL_CATEGORIES_SQL = ""
+			+ "SELECT * FROM " + CATEGORY_TABLE + " ORDER BY category_name";
+
+	private static final String FETCH_CHANGES_SINCE_SQL = ""
+			+ "SELECT * FROM " + RECIPE_CHANGE_TABLE + " WHERE change_id > ? ORDER BY change_id LIMIT ?";
+
+	private static final String FETCH_LATEST_CHANGE_ID_SQL = ""
+			+ "SELECT MAX(change_id) FROM " + RECIPE_CHANGE_TABLE;
+
+	private static final String FETCH_CHANGE_EPOCH_SQL = ""
+			+ "SELECT epoch FROM " + RECIPE_CHANGE_EPOCH_TABLE;
+
+	private static final String DELETE_CHANGES_BEFORE_SQL = ""
+			+ "DELETE FROM " + RECIPE_CHANGE_TABLE + " WHERE changed_at < ?";
+	// @formatter:on
+
+	/*
+	 * The recipe queries that select the columns of a fetch plan, one statement per plan. Building
+	 * them here keeps the SQL text identical from call to call, so the pool's statement cache can
+	 * reuse the prepared statement.
+	 */
+	// @formatter:off
+	private static final Map<FetchPlan, String> FETCH_RECIPE_BY_PLAN_SQL = byPlan(plan -> ""
+			+ "SELECT " + plan.getRecipeColumns() + " FROM " + RECIPE_TABLE + " WHERE recipe_id = ?");
+
+	private static final Map<FetchPlan, String> FETCH_ALL_RECIPES_BY_PLAN_SQL = byPlan(plan -> ""
+			+ "SELECT " + plan.getRecipeColumns() + " FROM " + RECIPE_TABLE + " ORDER BY recipe_name, recipe_id");
+
+	private static final Map<FetchPlan, String> FETCH_FIRST_PAGE_BY_PLAN_SQL = byPlan(plan -> ""
+			+ "SELECT " + plan.getRecipeColumns() + " FROM " + RECIPE_TABLE + " "
+			+ "ORDER BY recipe_name, recipe_id LIMIT ?");
+
+	private static final Map<FetchPlan, String> FETCH_NEXT_PAGE_BY_PLAN_SQL = byPlan(plan -> ""
+			+ "SELECT " + plan.getRecipeColumns() + " FROM " + RECIPE_TABLE + " "
+			+ "WHERE recipe_name > ? OR (recipe_name = ? AND recipe_id > ?) "
+			+ "ORDER BY recipe_name, recipe_id LIMIT ?");
+	// @formatter:on
+
+	/*
+	 * The IN-list queries of the batch fetch methods, one statement per power-of-two list size up to
+	 * ID_CHUNK_SIZE. A list of IDs is padded to the next size by repeating its last ID, which the IN
+	 * test ignores, so a handful of statements cover every chunk instead of one per distinct count.
+	 */
+	// @formatter:off
+	private static final String[] FETCH_RECIPES_IN_SQL = byInListSize(in -> ""
+			+ "SELECT * FROM " + RECIPE_TABLE + " WHERE recipe_id IN " + in);
+
+	private static final String[] FETCH_INGREDIENTS_IN_SQL = byInListSize(in -> ""
+			+ "SELECT i.*, u.unit_name_singular, u.unit_name_plural "
+			+ "FROM " + INGREDIENT_TABLE + " i "
+			+ "LEFT JOIN " + UNIT_TABLE + " u USING (unit_id) "
+			+ "WHERE i.recipe_id IN " + in + " "
+			+ "ORDER BY i.recipe_id, i.ingredient_order");
+
+	private static final String[] FETCH_STEPS_IN_SQL = byInListSize(in -> ""
+			+ "SELECT * FROM " + STEP_TABLE + " s WHERE s.recipe_id IN " + in + " "
+			+ "ORDER BY s.recipe_id, s.step_order");
+
+	private static final String[] FETCH_CATEGORIES_IN_SQL = byInListSize(in -> ""
+			+ "SELECT rc.recipe_id, c.* "
+			+ "FROM " + RECIPE_CATEGORY_TABLE + " rc "
+			+ "JOIN " + CATEGORY_TABLE + " c USING (category_id) "
+			+ "WHERE rc.recipe_id IN " + in + " "
+			+ "ORDER BY rc.recipe_id, c.category_name");
+	// @formatter:on
+
+	/* Binder plans for the INSERT statements above, in the order of their parameters. */
+	private static final EntityBinder<Recipe> RECIPE_BINDER = EntityBinder.of(Recipe.class)
+			.field("recipeName").field("notes").field("numServings").field("prepTime").field("cookTime");
+
+	private static final EntityBinder<Ingredient> INGREDIENT_BINDER = EntityBinder.of(Ingredient.class)
+			.field("recipeId")
+			.value(Integer.class, ingredient -> Objects.isNull(ingredient.getUnit()) ? null : ingredient.getUnit().getUnitId())
+			.field("ingredientName").field("instruction").field("ingredientOrder").field("amount");
+
+	private static final EntityBinder<Step> STEP_BINDER = EntityBinder.of(Step.class)
+			.field("recipeId").field("stepOrder").field("stepText");
+
+	private GraphLoadMode graphLoadMode = GraphLoadMode.SINGLE_ROUND_TRIP;
+
+	/**
+	 * Every write in this class commits through here, which opens the read-your-writes window that
+	 * keeps reads on the primary while the replica catches up.
+	 */
+	@Override
+	protected void commitTransaction(Connection conn) throws SQLException {
+		super.commitTransaction(conn);
+		DbConnection.recordWrite();
+	}//end METHOD commitTransaction
+
+	/*
+	 * Adds the rows to the DAO operation event of the connection in use, if one is being recorded.
+	 */
+	@Override
+	protected void rowsExtracted(int rows, long elapsedNanos) {
+		DaoOperationEvent.rowsMapped(rows, elapsedNanos);
+	}//end METHOD rowsExtracted
+
+	public GraphLoadMode getGraphLoadMode() {
+		return graphLoadMode;
+	}//end METHOD getGraphLoadMode
+
+	public void setGraphLoadMode(GraphLoadMode graphLoadMode) {
+		this.graphLoadMode = Objects.requireNonNull(graphLoadMode);
+	}//end METHOD setGraphLoadMode
+
 	public Optional<Recipe> fetchRecipeById(Integer recipeId){
-		String sql = "SELECT * FROM " + RECIPE_TABLE + " WHERE recipe_id = ?";
-		
-		try(Connection conn = DbConnection.getConnection()){
-			startTransaction(conn);
+		return fetchRecipeById(recipeId, FetchPlan.FULL_GRAPH);
+	}//end METHOD fetchRecipeById
+
+
+	public Optional<Recipe> fetchRecipeById(Integer recipeId, FetchPlan plan){
+		try(Connection conn = DbConnection.getReadConnection()){
+			startReadOnlyTransaction(conn, Connection.TRANSACTION_REPEATABLE_READ);
 			
 			try {
-				Recipe recipe = null;
+				Recipe recipe;
 				
-				try(PreparedStatement stmt = conn.prepareStatement(sql)){
-					setParameter(stmt, 1, recipeId, Integer.class);
-					
-					try(ResultSet rs = stmt.executeQuery()){
-						if(rs.next()) {
-							recipe = extract(rs, Recipe.class);
-						}//end IF
-					}//end TRY rs
-				}//end TRY stmt
-				
-				if(Objects.nonNull(recipe)) {
-					recipe.getIngredients().addAll(fetchRecipeIngredients(conn, recipeId));
-					
-					recipe.getSteps().addAll(fetchRecipeSteps(conn, recipeId));
-					recipe.getCategories().addAll(fetchRecipeCategories(conn, recipeId));
-				}//end IF objects
+				if(!plan.includesChildren()) {
+					recipe = fetchRecipeOnly(conn, recipeId, plan);
+				}//end IF
+				else if(graphLoadMode == GraphLoadMode.SINGLE_ROUND_TRIP) {
+					recipe = fetchRecipeGraph(conn, recipeId);
+				}//end IF
+				else {
+					recipe = fetchRecipeSequentially(conn, recipeId);
+				}//end ELSE
 				
+				endReadOnlyTransaction(conn);
 				return Optional.ofNullable(recipe);
 			}//end TRY recipe
 			catch(Exception e) {
@@ -69,98 +270,347 @@ public class RecipeDao extends DaoBase {
 		}//end CATCH conn
 	}//end METHOD fetchRecipeById
 
+
+	private Recipe fetchRecipeOnly(Connection conn, Integer recipeId, FetchPlan plan) throws SQLException {
+		try(PreparedStatement stmt = conn.prepareStatement(FETCH_RECIPE_BY_PLAN_SQL.get(plan))){
+			setParameter(stmt, 1, recipeId, INTEGER_BINDER);
+			
+			try(ResultSet rs = stmt.executeQuery()){
+				return rs.next() ? extract(rs, Recipe.class) : null;
+			}//end TRY rs
+		}//end TRY stmt
+	}//end METHOD fetchRecipeOnly
+
+
+	private Recipe fetchRecipeSequentially(Connection conn, Integer recipeId) throws SQLException {
+		Recipe recipe = null;
+		
+		try(PreparedStatement stmt = conn.prepareStatement(FETCH_RECIPE_SQL)){
+			setParameter(stmt, 1, recipeId, INTEGER_BINDER);
+			
+			try(ResultSet rs = stmt.executeQuery()){
+				if(rs.next()) {
+					recipe = extract(rs, Recipe.class);
+				}//end IF
+			}//end TRY rs
+		}//end TRY stmt
+		
+		if(Objects.nonNull(recipe)) {
+			recipe.getIngredients().addAll(fetchRecipeIngredients(conn, recipeId));
+			
+			recipe.getSteps().addAll(fetchRecipeSteps(conn, recipeId));
+			recipe.getCategories().addAll(fetchRecipeCategories(conn, recipeId));
+		}//end IF objects
+		
+		return recipe;
+	}//end METHOD fetchRecipeSequentially
+
+
+	private Recipe fetchRecipeGraph(Connection conn, Integer recipeId) throws SQLException {
+		try(PreparedStatement stmt = conn.prepareStatement(FETCH_RECIPE_GRAPH_SQL)){
+			for(int index = 1; index <= 4; index++) {
+				setParameter(stmt, index, recipeId, INTEGER_BINDER);
+			}//end FOR
+			
+			stmt.execute();
+			Recipe recipe = null;
+			
+			try(ResultSet rs = stmt.getResultSet()){
+				if(rs.next()) {
+					recipe = extract(rs, Recipe.class);
+				}//end IF
+			}//end TRY rs
+			
+			/* The child result sets are empty if the recipe does not exist, so they can be skipped. */
+			if(Objects.isNull(recipe)) {
+				return null;
+			}//end IF
+			
+			try(ResultSet rs = nextResultSet(stmt)){
+				recipe.getIngredients().addAll(extractIngredients(rs));
+			}//end TRY rs
+			
+			try(ResultSet rs = nextResultSet(stmt)){
+				recipe.getSteps().addAll(extractSteps(rs));
+			}//end TRY rs
+			
+			try(ResultSet rs = nextResultSet(stmt)){
+				recipe.getCategories().addAll(extractCategories(rs));
+			}//end TRY rs
+			
+			return recipe;
+		}//end TRY stmt
+	}//end METHOD fetchRecipeGraph
+
+
+	private ResultSet nextResultSet(Statement stmt) throws SQLException {
+		if(!stmt.getMoreResults()) {
+			throw new SQLException("Expected another result set from the recipe graph query");
+		}//end IF
+		
+		return stmt.getResultSet();
+	}//end METHOD nextResultSet
+
 	
 	private List<Category> fetchRecipeCategories(Connection conn, Integer recipeId) throws SQLException {
-		//@formatter:off
-		String sql = ""
-				+ "SELECT c.* "
-				+ "FROM " + RECIPE_CATEGORY_TABLE + " rc "
-				+ "JOIN " + CATEGORY_TABLE + " c USING (category_id) "
-				+ "WHERE recipe_id = ? "
-				+ "ORDER BY c.category_name";
-		//@formatter:on
-		
-		try(PreparedStatement stmt = conn.prepareStatement(sql)){
-			setParameter(stmt, 1, recipeId, Integer.class);
+		try(PreparedStatement stmt = conn.prepareStatement(FETCH_CATEGORIES_SQL)){
+			setParameter(stmt, 1, recipeId, INTEGER_BINDER);
 			
 			try(ResultSet rs = stmt.executeQuery()){
-				List<Category> categories = new LinkedList<Category>();
-				
-				while(rs.next()) {
-					categories.add(extract(rs, Category.class));
-				}//end WHILE
-				
-				return categories;
+				return extractCategories(rs);
 			}//end TRY rs
 		}//end TRY stmt	
 	}//end METHOD fetchRecipeCategories
+
+
+	private List<Category> extractCategories(ResultSet rs) throws SQLException {
+		return extractAll(rs, Category.class);
+	}//end METHOD extractCategories
 			
 
 
 	private List<Step> fetchRecipeSteps(Connection conn, Integer recipeId) throws SQLException {
-		String sql = "SELECT * FROM " + STEP_TABLE + " s WHERE s.recipe_id = ?";
-		
-		try(PreparedStatement stmt = conn.prepareStatement(sql)){
-			setParameter(stmt, 1, recipeId, Integer.class);
+		try(PreparedStatement stmt = conn.prepareStatement(FETCH_STEPS_SQL)){
+			setParameter(stmt, 1, recipeId, INTEGER_BINDER);
 			
 			try(ResultSet rs = stmt.executeQuery()){
-				List<Step> steps = new LinkedList<Step>();
-				
-				while(rs.next()) {
-					steps.add(extract(rs, Step.class));
-				}//end WHILE
-				
-				return steps;
+				return extractSteps(rs);
 			}//end TRY rs
 		}//end TRY stmt
 	}//end METHOD fetchRecipeSteps
 
 
+	private List<Step> extractSteps(ResultSet rs) throws SQLException {
+		return extractAll(rs, Step.class);
+	}//end METHOD extractSteps
+
+
 	private List<Ingredient> fetchRecipeIngredients(Connection conn, Integer recipeId) throws SQLException {
-		// @formatter:off
-	    String sql = ""
-	        + "SELECT i.*, u.unit_name_singular, u.unit_name_plural "
-	        + "FROM " + INGREDIENT_TABLE + " i "
-	        + "LEFT JOIN " + UNIT_TABLE + " u USING (unit_id) "
-	        + "WHERE i.recipe_id = ? "
-	        + "ORDER BY i.ingredient_order";
-	    // @formatter:on
+		try(PreparedStatement stmt = conn.prepareStatement(FETCH_INGREDIENTS_SQL)){
+			setParameter(stmt, 1, recipeId, INTEGER_BINDER);
+			
+			try(ResultSet rs = stmt.executeQuery()){
+				return extractIngredients(rs);
+			}//end TRY rs
+		}//end TRY stmt
+	}//end METHOD fetchRecipeIngredients
+
+
+	private List<Ingredient> extractIngredients(ResultSet rs) throws SQLException {
+		return extractAll(rs, Ingredient.class, row -> {
+			Ingredient ingredient = extract(row, Ingredient.class);
+			Unit unit = extract(row, Unit.class);
+			
+			ingredient.setUnit(unit);
+			return ingredient;
+		});
+	}//end METHOD extractIngredients
 
+
+	/**
+	 * Loads the full graph for each of the given recipes. Each child table is read with one IN-list
+	 * query per chunk of IDs and the children are attached to their recipes in memory, so the number
+	 * of queries does not grow with the number of recipes. Recipes are returned in the order of the
+	 * given IDs; IDs that do not exist are skipped.
+	 */
+	public List<Recipe> fetchRecipesByIds(Collection<Integer> recipeIds) {
+		List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(recipeIds));
+		ids.removeIf(Objects::isNull);
+		
+		if(ids.isEmpty()) {
+			return new LinkedList<>();
+		}//end IF
 		
-		try(PreparedStatement stmt = conn.prepareStatement(sql)){
-			setParameter(stmt, 1, recipeId, Integer.class);
+		try(Connection conn = DbConnection.getReadConnection()){
+			startReadOnlyTransaction(conn, Connection.TRANSACTION_REPEATABLE_READ);
 			
-			try(ResultSet rs = stmt.executeQuery()){
-				List<Ingredient> ingredients = new LinkedList<Ingredient>();
+			try {
+				Map<Integer, Recipe> recipesById = new HashMap<>();
 				
-				while(rs.next()) {
-					Ingredient ingredient = extract(rs, Ingredient.class);
-					Unit unit = extract(rs, Unit.class);
+				for(int from = 0; from < ids.size(); from += ID_CHUNK_SIZE) {
+					List<Integer> chunk = ids.subList(from, Math.min(from + ID_CHUNK_SIZE, ids.size()));
+					fetchRecipeChunk(conn, chunk, recipesById);
+				}//end FOR
+				
+				List<Recipe> recipes = new LinkedList<>();
+				
+				for(Integer recipeId : ids) {
+					Recipe recipe = recipesById.get(recipeId);
 					
-					ingredient.setUnit(unit);
-					ingredients.add(ingredient);
-				}//end WHILE
+					if(Objects.nonNull(recipe)) {
+						recipes.add(recipe);
+					}//end IF
+				}//end FOR
 				
-				return ingredients;
+				endReadOnlyTransaction(conn);
+				return recipes;
+			}//end TRY
+			catch(Exception e) {
+				rollbackTransaction(conn);
+				throw new DbException(e);
+			}//end CATCH
+		}//end TRY conn
+		catch (SQLException e) {
+			throw new DbException(e);
+		}//end CATCH conn
+	}//end METHOD fetchRecipesByIds
+
+
+	private void fetchRecipeChunk(Connection conn, List<Integer> recipeIds, Map<Integer, Recipe> recipesById)
+			throws SQLException {
+		int bucket = inListBucket(recipeIds.size());
+		
+		try(PreparedStatement stmt = conn.prepareStatement(FETCH_RECIPES_IN_SQL[bucket])){
+			setIdParameters(stmt, recipeIds, bucket);
+			
+			try(ResultSet rs = stmt.executeQuery()){
+				for(Recipe recipe : extractAll(rs, Recipe.class)) {
+					recipesById.put(recipe.getRecipeId(), recipe);
+				}//end FOR
 			}//end TRY rs
 		}//end TRY stmt
-	}//end METHOD fetchRecipeIngredients
+		
+		attachChildren(conn, recipeIds, recipesById);
+	}//end METHOD fetchRecipeChunk
 
 
-	public List<Recipe> fetchAllRecipes() {
-		String sql = "SELECT * FROM " + RECIPE_TABLE + " ORDER BY recipe_name";
+	/**
+	 * Reads the ingredients, steps and categories of the given recipes with one IN-list query per
+	 * child table and adds them to the matching recipe in the map.
+	 */
+	private void attachChildren(Connection conn, List<Integer> recipeIds, Map<Integer, Recipe> recipesById)
+			throws SQLException {
+		int bucket = inListBucket(recipeIds.size());
 		
-		try(Connection conn = DbConnection.getConnection()){
-			startTransaction(conn);
+		try(PreparedStatement stmt = conn.prepareStatement(FETCH_INGREDIENTS_IN_SQL[bucket])){
+			setIdParameters(stmt, recipeIds, bucket);
 			
-			try(PreparedStatement stmt = conn.prepareStatement(sql)){
+			try(ResultSet rs = stmt.executeQuery()){
+				for(Ingredient ingredient : extractIngredients(rs)) {
+					recipesById.get(ingredient.getRecipeId()).getIngredients().add(ingredient);
+				}//end FOR
+			}//end TRY rs
+		}//end TRY stmt
+		
+		try(PreparedStatement stmt = conn.prepareStatement(FETCH_STEPS_IN_SQL[bucket])){
+			setIdParameters(stmt, recipeIds, bucket);
+			
+			try(ResultSet rs = stmt.executeQuery()){
+				for(Step step : extractSteps(rs)) {
+					recipesById.get(step.getRecipeId()).getSteps().add(step);
+				}//end FOR
+			}//end TRY rs
+		}//end TRY stmt
+		
+		try(PreparedStatement stmt = conn.prepareStatement(FETCH_CATEGORIES_IN_SQL[bucket])){
+			setIdParameters(stmt, recipeIds, bucket);
+			
+			try(ResultSet rs = stmt.executeQuery()){
+				extractAll(rs, Category.class, row -> {
+					/* Category has no recipe ID of its own, so the first column carries it. */
+					Category category = extract(row, Category.class);
+					recipesById.get(row.getInt(1)).getCategories().add(category);
+					return category;
+				});
+			}//end TRY rs
+		}//end TRY stmt
+	}//end METHOD attachChildren
+
+
+	/**
+	 * Attaches children to a list of recipes that has already been read, in chunks of IDs.
+	 */
+	private void attachChildrenInChunks(Connection conn, List<Recipe> recipes) throws SQLException {
+		Map<Integer, Recipe> recipesById = new HashMap<>();
+		List<Integer> ids = new ArrayList<>(recipes.size());
+		
+		for(Recipe recipe : recipes) {
+			recipesById.put(recipe.getRecipeId(), recipe);
+			ids.add(recipe.getRecipeId());
+		}//end FOR
+		
+		for(int from = 0; from < ids.size(); from += ID_CHUNK_SIZE) {
+			attachChildren(conn, ids.subList(from, Math.min(from + ID_CHUNK_SIZE, ids.size())), recipesById);
+		}//end FOR
+	}//end METHOD attachChildrenInChunks
+
+
+	private static Map<FetchPlan, String> byPlan(Function<FetchPlan, String> sqlForPlan) {
+		Map<FetchPlan, String> sqlByPlan = new EnumMap<>(FetchPlan.class);
+		
+		for(FetchPlan plan : FetchPlan.values()) {
+			sqlByPlan.put(plan, sqlForPlan.apply(plan));
+		}//end FOR
+		
+		return sqlByPlan;
+	}//end METHOD byPlan
+
+
+	/*
+	 * Entry n of the result has an IN list of 2^n placeholders, for every n up to the bucket of
+	 * ID_CHUNK_SIZE.
+	 */
+	private static String[] byInListSize(Function<String, String> sqlForInList) {
+		String[] sqlBySize = new String[inListBucket(ID_CHUNK_SIZE) + 1];
+		
+		for(int bucket = 0; bucket < sqlBySize.length; bucket++) {
+			int count = 1 << bucket;
+			StringBuilder in = new StringBuilder(count * 3 + 2).append('(');
+			
+			for(int index = 0; index < count; index++) {
+				in.append(index == 0 ? "?" : ", ?");
+			}//end FOR
+			
+			sqlBySize[bucket] = sqlForInList.apply(in.append(')').toString());
+		}//end FOR
+		
+		return sqlBySize;
+	}//end METHOD byInListSize
+
+
+	/* The smallest n with 2^n >= count. */
+	private static int inListBucket(int count) {
+		return count <= 1 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(count - 1);
+	}//end METHOD inListBucket
+
+
+	/*
+	 * Binds the IDs to the 2^bucket placeholders of an IN list, repeating the last ID in the
+	 * placeholders past the end of the list.
+	 */
+	private void setIdParameters(PreparedStatement stmt, List<Integer> ids, int bucket) throws SQLException {
+		int index = 1;
+		
+		for(Integer id : ids) {
+			setParameter(stmt, index++, id, INTEGER_BINDER);
+		}//end FOR
+		
+		Integer last = ids.get(ids.size() - 1);
+		
+		while(index <= 1 << bucket) {
+			setParameter(stmt, index++, last, INTEGER_BINDER);
+		}//end WHILE
+	}//end METHOD setIdParameters
+
+
+	public List<Recipe> fetchAllRecipes() {
+		return fetchAllRecipes(FetchPlan.HEADER);
+	}//end METHOD fetchAllRecipes
+
+
+	public List<Recipe> fetchAllRecipes(FetchPlan plan) {
+		try(Connection conn = DbConnection.getReadConnection()){
+			startReadOnlyTransaction(conn, Connection.TRANSACTION_REPEATABLE_READ);
+			
+			try(PreparedStatement stmt = conn.prepareStatement(FETCH_ALL_RECIPES_BY_PLAN_SQL.get(plan))){
 				try(ResultSet rs = stmt.executeQuery()){
-					List<Recipe> recipes = new LinkedList<>();
+					List<Recipe> recipes = extractAll(rs, Recipe.class);
 					
-					while(rs.next()) {
-						recipes.add(extract(rs, Recipe.class));
-					}//end WHILE
+					if(plan.includesChildren()) {
+						attachChildrenInChunks(conn, recipes);
+					}//end IF
 					
+					endReadOnlyTransaction(conn);
 					return recipes;
 				}//end TRY RS stmt
 			}//end TRY stmt
@@ -174,26 +624,464 @@ public class RecipeDao extends DaoBase {
 		}//end CATCH conn
 	}//end METHOD fetchAllRecipes
 
-	public Recipe insertRecipe(Recipe recipe) {
-		String sql = ""
-			+ "INSERT INTO " + RECIPE_TABLE + " "
-			+ "(recipe_name, notes, num_servings, prep_time, cook_time) "
-			+ "VALUES "
-			+ "(?, ?, ?, ?, ?)";
+	/**
+	 * Returns one page of recipes ordered by (recipe_name, recipe_id). Pages are located by seeking
+	 * past the last row of the previous page rather than with OFFSET, so every page costs the same as
+	 * the first. Pass a null token for the first page.
+	 */
+	public RecipePage fetchRecipePage(int pageSize, String continuationToken) {
+		return fetchRecipePage(pageSize, continuationToken, FetchPlan.HEADER);
+	}//end METHOD fetchRecipePage
+
+
+	public RecipePage fetchRecipePage(int pageSize, String continuationToken, FetchPlan plan) {
+		if(pageSize < 1) {
+			throw new IllegalArgumentException("Page size must be at least 1");
+		}//end IF
+		
+		PageKey after = Objects.isNull(continuationToken) ? null : PageKey.decode(continuationToken);
+		
+		String sql = Objects.isNull(after) ? FETCH_FIRST_PAGE_BY_PLAN_SQL.get(plan) : FETCH_NEXT_PAGE_BY_PLAN_SQL.get(plan);
+		
+		try(Connection conn = DbConnection.getReadConnection()){
+			startReadOnlyTransaction(conn, Connection.TRANSACTION_REPEATABLE_READ);
+			
+			try(PreparedStatement stmt = conn.prepareStatement(sql)){
+				int index = 1;
+				
+				if(Objects.nonNull(after)) {
+					setParameter(stmt, index++, after.recipeName, STRING_BINDER);
+					setParameter(stmt, index++, after.recipeName, STRING_BINDER);
+					setParameter(stmt, index++, after.recipeId, INTEGER_BINDER);
+				}//end IF
+				
+				/* One extra row tells us whether there is another page. */
+				setParameter(stmt, index, pageSize + 1, INTEGER_BINDER);
+				
+				try(ResultSet rs = stmt.executeQuery()){
+					List<Recipe> recipes = extractAll(rs, Recipe.class);
+					boolean more = recipes.size() > pageSize;
+					
+					if(more) {
+						recipes.remove(pageSize);
+					}//end IF
+					
+					if(plan.includesChildren()) {
+						attachChildrenInChunks(conn, recipes);
+					}//end IF
+					
+					String nextToken = null;
+					
+					if(more) {
+						Recipe last = recipes.get(recipes.size() - 1);
+						nextToken = new PageKey(last.getRecipeName(), last.getRecipeId()).encode();
+					}//end IF
+					
+					endReadOnlyTransaction(conn);
+					return new RecipePage(recipes, nextToken);
+				}//end TRY rs
+			}//end TRY stmt
+			catch(Exception e) {
+				rollbackTransaction(conn);
+				throw new DbException(e);
+			}//end CATCH stmt
+		}//end TRY conn
+		catch (SQLException e) {
+			throw new DbException(e);
+		}//end CATCH conn
+	}//end METHOD fetchRecipePage
+
+
+	/**
+	 * The sort key of the last row on a page, carried between requests as a continuation token.
+	 */
+	private static class PageKey {
+		private final String recipeName;
+		private final Integer recipeId;
+		
+		PageKey(String recipeName, Integer recipeId) {
+			this.recipeName = recipeName;
+			this.recipeId = recipeId;
+		}//end CONSTRUCTOR
+		
+		String encode() {
+			String key = recipeId + ":" + recipeName;
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+		}//end METHOD encode
+		
+		static PageKey decode(String token) {
+			try {
+				String key = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+				int colon = key.indexOf(':');
+				
+				return new PageKey(key.substring(colon + 1), Integer.valueOf(key.substring(0, colon)));
+			}//end TRY
+			catch(RuntimeException e) {
+				throw new DbException("Invalid continuation token: " + token, e);
+			}//end CATCH
+		}//end METHOD decode
+	}//end CLASS PageKey
+
+
+	/**
+	 * Streams every recipe row (no children) in name order without loading the table into memory.
+	 * The driver is put into row-streaming mode, so only the current row is held on the heap. The
+	 * stream holds a pooled connection until it is closed, so it must be used in a
+	 * try-with-resources block. No other statement can run on that connection while it is open.
+	 */
+	public Stream<Recipe> streamAllRecipes() {
+		return streamAllRecipes(FetchPlan.HEADER);
+	}//end METHOD streamAllRecipes
+
+
+	public Stream<Recipe> streamAllRecipes(FetchPlan plan) {
+		if(plan.includesChildren()) {
+			throw new IllegalArgumentException("Recipes cannot be streamed with their children");
+		}//end IF
+		
+		Connection conn = DbConnection.getReadConnection();
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		
+		try {
+			startReadOnlyTransaction(conn, Connection.TRANSACTION_READ_COMMITTED);
+			
+			stmt = conn.prepareStatement(FETCH_ALL_RECIPES_BY_PLAN_SQL.get(plan), ResultSet.TYPE_FORWARD_ONLY,
+					ResultSet.CONCUR_READ_ONLY);
+			
+			/* Integer.MIN_VALUE tells MySQL Connector/J to stream rows one at a time. */
+			stmt.setFetchSize(Integer.MIN_VALUE);
+			rs = stmt.executeQuery();
+			
+			return streamOf(conn, stmt, rs);
+		}//end TRY
+		catch(SQLException e) {
+			/* The statement must be closed too, or it stays checked out of the statement cache. */
+			DbException failure = new DbException(e);
+			
+			try {
+				closeAll(rs, stmt, conn);
+			}//end TRY
+			catch(DbException closeFailure) {
+				failure.addSuppressed(closeFailure);
+			}//end CATCH
+			
+			throw failure;
+		}//end CATCH
+	}//end METHOD streamAllRecipes
+
+
+	/*
+	 * Wraps an open result set in a stream that closes the result set, statement and connection when
+	 * the stream is closed.
+	 */
+	private Stream<Recipe> streamOf(Connection conn, PreparedStatement stmt, ResultSet rs) {
+		Spliterator<Recipe> rows = new Spliterators.AbstractSpliterator<Recipe>(Long.MAX_VALUE,
+				Spliterator.ORDERED | Spliterator.NONNULL) {
+			@Override
+			public boolean tryAdvance(Consumer<? super Recipe> action) {
+				try {
+					if(!rs.next()) {
+						return false;
+					}//end IF
+					
+					action.accept(extract(rs, Recipe.class));
+					return true;
+				}//end TRY
+				catch(SQLException e) {
+					throw new DbException(e);
+				}//end CATCH
+			}//end METHOD tryAdvance
+		};
+		
+		return StreamSupport.stream(rows, false).onClose(() -> closeAll(rs, stmt, () -> endReadOnlyTransaction(conn), conn));
+	}//end METHOD streamOf
+
+
+	/*
+	 * Closes each resource in order, skipping nulls for resources that were never opened. Every
+	 * resource is closed even if an earlier one fails; the first failure is thrown.
+	 */
+	private void closeAll(AutoCloseable... resources) {
+		DbException failure = null;
+		
+		for(AutoCloseable resource : resources) {
+			if(Objects.isNull(resource)) {
+				continue;
+			}//end IF
+			
+			try {
+				resource.close();
+			}//end TRY
+			catch(Exception e) {
+				if(Objects.isNull(failure)) {
+					failure = new DbException(e);
+				}//end IF
+			}//end CATCH
+		}//end FOR
 		
+		if(Objects.nonNull(failure)) {
+			throw failure;
+		}//end IF
+	}//end METHOD closeAll
+
+
+	/**
+	 * Inserts a recipe with all of its ingredients, steps and categories in one transaction on one
+	 * connection. Each child table is written with a single JDBC batch, which the driver sends as a
+	 * multi-row INSERT (rewriteBatchedStatements), and the generated keys are set on the recipe and
+	 * its ingredients and steps. Children are ordered as they appear in the recipe's lists.
+	 * Categories are matched by ID if one is set, otherwise by name.
+	 */
+	public Recipe insertRecipeGraph(Recipe recipe) {
 		try(Connection conn = DbConnection.getConnection()){
 			startTransaction(conn);
 			
-			try(PreparedStatement stmt = conn.prepareStatement(sql)){
-				setParameter(stmt, 1, recipe.getRecipeName(), String.class);
-				setParameter(stmt, 2, recipe.getNotes(), String.class);
-				setParameter(stmt, 3, recipe.getNumServings(), Integer.class);
-				setParameter(stmt, 4, recipe.getPrepTime(), LocalTime.class);
-				setParameter(stmt, 5, recipe.getCookTime(), LocalTime.class);
+			try {
+				insertRecipeGraphs(conn, List.of(recipe));
+				commitTransaction(conn);
+				
+				return recipe;
+			}//end TRY
+			catch(Exception e) {
+				rollbackTransaction(conn);
+				clearGeneratedKeys(recipe);
+				throw new DbException(e);
+			}//end CATCH
+		}//end TRY conn
+		catch (SQLException e) {
+			throw new DbException(e);
+		}//end CATCH conn
+	}//end METHOD insertRecipeGraph
+
+
+	/**
+	 * Imports recipe graphs in chunks of chunkSize recipes, one transaction per chunk, using the same
+	 * batched multi-row inserts as {@link #insertRecipeGraph(Recipe)}. If a chunk fails it is rolled
+	 * back and its recipes are retried one at a time, so a bad recipe is recorded in the result and
+	 * skipped without losing the rest of the chunk. The listener, which may be null, is called with
+	 * the running totals after every chunk.
+	 */
+	public ImportResult importRecipes(Iterator<Recipe> recipes, int chunkSize, Consumer<ImportResult> progress) {
+		if(chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be at least 1");
+		}//end IF
+		
+		ImportResult result = new ImportResult();
+		List<Recipe> chunk = new ArrayList<>(chunkSize);
+		
+		while(recipes.hasNext()) {
+			chunk.add(recipes.next());
+			
+			if(chunk.size() == chunkSize || !recipes.hasNext()) {
+				importChunk(chunk, result);
+				chunk.clear();
+				
+				if(Objects.nonNull(progress)) {
+					progress.accept(result);
+				}//end IF
+			}//end IF
+		}//end WHILE
+		
+		return result;
+	}//end METHOD importRecipes
+
+
+	private void importChunk(List<Recipe> chunk, ImportResult result) {
+		try(Connection conn = DbConnection.getConnection()){
+			startTransaction(conn);
+			
+			try {
+				insertRecipeGraphs(conn, chunk);
+				commitTransaction(conn);
+				result.chunkCommitted(chunk.size());
+				return;
+			}//end TRY
+			catch(Exception e) {
+				rollbackTransaction(conn);
+			}//end CATCH
+			
+			/* Something in the chunk is bad. Find it by importing the recipes one at a time. */
+			for(Recipe recipe : chunk) {
+				try {
+					insertRecipeGraphs(conn, List.of(recipe));
+					commitTransaction(conn);
+					result.recipeCommitted();
+				}//end TRY
+				catch(Exception e) {
+					rollbackTransaction(conn);
+					clearGeneratedKeys(recipe);
+					result.recipeFailed(recipe.getRecipeName(), e);
+				}//end CATCH
+			}//end FOR
+			
+			result.chunkRetried();
+		}//end TRY conn
+		catch (SQLException e) {
+			throw new DbException(e);
+		}//end CATCH conn
+	}//end METHOD importChunk
+
+
+	/*
+	 * Keys from a rolled-back insert do not exist in the database, so they must not be left on the
+	 * entities, and neither must the recipe IDs and orders the insert set on the children.
+	 */
+	private void clearGeneratedKeys(Recipe recipe) {
+		recipe.setRecipeId(null);
+		
+		for(Ingredient ingredient : recipe.getIngredients()) {
+			ingredient.setIngredientId(null);
+			ingredient.setRecipeId(null);
+			ingredient.setIngredientOrder(null);
+		}//end FOR
+		
+		for(Step step : recipe.getSteps()) {
+			step.setStepId(null);
+			step.setRecipeId(null);
+			step.setStepOrder(null);
+		}//end FOR
+	}//end METHOD clearGeneratedKeys
+
+
+	private void insertRecipeGraphs(Connection conn, List<Recipe> recipes) throws SQLException {
+		insertRecipeRows(conn, recipes);
+		insertIngredientRows(conn, recipes);
+		insertStepRows(conn, recipes);
+		insertCategoryRows(conn, recipes);
+		
+		List<Integer> recipeIds = new ArrayList<>(recipes.size());
+		recipes.forEach(recipe -> recipeIds.add(recipe.getRecipeId()));
+		recordChanges(conn, recipeIds);
+	}//end METHOD insertRecipeGraphs
+
+
+	private void insertRecipeRows(Connection conn, List<Recipe> recipes) throws SQLException {
+		try(PreparedStatement stmt = conn.prepareStatement(INSERT_RECIPE_SQL, Statement.RETURN_GENERATED_KEYS)){
+			for(Recipe recipe : recipes) {
+				RECIPE_BINDER.bind(stmt, recipe);
+				stmt.addBatch();
+			}//end FOR
+			
+			stmt.executeBatch();
+			List<Integer> keys = getGeneratedKeys(stmt, recipes.size());
+			
+			for(int index = 0; index < recipes.size(); index++) {
+				recipes.get(index).setRecipeId(keys.get(index));
+			}//end FOR
+		}//end TRY stmt
+	}//end METHOD insertRecipeRows
+
+
+	private void insertIngredientRows(Connection conn, List<Recipe> recipes) throws SQLException {
+		List<Ingredient> inserted = new ArrayList<>();
+		
+		try(PreparedStatement stmt = conn.prepareStatement(INSERT_INGREDIENT_SQL, Statement.RETURN_GENERATED_KEYS)){
+			for(Recipe recipe : recipes) {
+				int order = 0;
+				
+				for(Ingredient ingredient : recipe.getIngredients()) {
+					ingredient.setRecipeId(recipe.getRecipeId());
+					order += SEQUENCE_GAP;
+					ingredient.setIngredientOrder(order);
+					
+					INGREDIENT_BINDER.bind(stmt, ingredient);
+					stmt.addBatch();
+					inserted.add(ingredient);
+				}//end FOR ingredient
+			}//end FOR recipe
+			
+			if(inserted.isEmpty()) {
+				return;
+			}//end IF
+			
+			stmt.executeBatch();
+			List<Integer> keys = getGeneratedKeys(stmt, inserted.size());
+			
+			for(int index = 0; index < inserted.size(); index++) {
+				inserted.get(index).setIngredientId(keys.get(index));
+			}//end FOR
+		}//end TRY stmt
+	}//end METHOD insertIngredientRows
+
+
+	private void insertStepRows(Connection conn, List<Recipe> recipes) throws SQLException {
+		List<Step> inserted = new ArrayList<>();
+		
+		try(PreparedStatement stmt = conn.prepareStatement(INSERT_STEP_SQL, Statement.RETURN_GENERATED_KEYS)){
+			for(Recipe recipe : recipes) {
+				int order = 0;
+				
+				for(Step step : recipe.getSteps()) {
+					step.setRecipeId(recipe.getRecipeId());
+					order += SEQUENCE_GAP;
+					step.setStepOrder(order);
+					
+					STEP_BINDER.bind(stmt, step);
+					stmt.addBatch();
+					inserted.add(step);
+				}//end FOR step
+			}//end FOR recipe
+			
+			if(inserted.isEmpty()) {
+				return;
+			}//end IF
+			
+			stmt.executeBatch();
+			List<Integer> keys = getGeneratedKeys(stmt, inserted.size());
+			
+			for(int index = 0; index < inserted.size(); index++) {
+				inserted.get(index).setStepId(keys.get(index));
+			}//end FOR
+		}//end TRY stmt
+	}//end METHOD insertStepRows
+
+
+	private void insertCategoryRows(Connection conn, List<Recipe> recipes) throws SQLException {
+		try(PreparedStatement byId = conn.prepareStatement(INSERT_RECIPE_CATEGORY_SQL);
+				PreparedStatement byName = conn.prepareStatement(INSERT_RECIPE_CATEGORY_BY_NAME_SQL)){
+			boolean anyById = false;
+			boolean anyByName = false;
+			
+			for(Recipe recipe : recipes) {
+				for(Category category : recipe.getCategories()) {
+					if(Objects.nonNull(category.getCategoryId())) {
+						setParameter(byId, 1, recipe.getRecipeId(), INTEGER_BINDER);
+						setParameter(byId, 2, category.getCategoryId(), INTEGER_BINDER);
+						byId.addBatch();
+						anyById = true;
+					}//end IF
+					else {
+						setParameter(byName, 1, recipe.getRecipeId(), INTEGER_BINDER);
+						setParameter(byName, 2, category.getCategoryName(), STRING_BINDER);
+						byName.addBatch();
+						anyByName = true;
+					}//end ELSE
+				}//end FOR category
+			}//end FOR recipe
+			
+			if(anyById) {
+				byId.executeBatch();
+			}//end IF
+			
+			if(anyByName) {
+				byName.executeBatch();
+			}//end IF
+		}//end TRY stmt
+	}//end METHOD insertCategoryRows
+
+
+	public Recipe insertRecipe(Recipe recipe) {
+		try(Connection conn = DbConnection.getConnection()){
+			startTransaction(conn);
+			
+			try(PreparedStatement stmt = conn.prepareStatement(INSERT_RECIPE_SQL, Statement.RETURN_GENERATED_KEYS)){
+				RECIPE_BINDER.bind(stmt, recipe);
 
 				stmt.executeUpdate();
-				Integer recipeId = getLastInsertId(conn, RECIPE_TABLE);
+				Integer recipeId = getGeneratedKey(stmt);
 				
+				recordChanges(conn, List.of(recipeId));
 				commitTransaction(conn);
 				
 				recipe.setRecipeId(recipeId);
@@ -234,20 +1122,29 @@ public class RecipeDao extends DaoBase {
 	}//end METHOD executeBatch
 
 
+	/**
+	 * Loads a stream of statements, such as a large seed script, in parallel, chunk-committed
+	 * batches (see {@link BatchLoader}). INSERTs are grouped by table, merged into multi-row INSERTs
+	 * and loaded in foreign key order, with independent tables loaded at the same time; each table's
+	 * transaction is committed every commitEvery statements. Other statements run on their own, in
+	 * script order. A failure leaves everything committed before it in place. The listener, which may
+	 * be null, is called after every commit.
+	 */
+	public LoadResult executeBatch(Iterator<String> sqlStatements, int commitEvery, Consumer<LoadResult> progress) {
+		int parallelism = Math.max(1, Math.min(LOAD_PARALLELISM, DbConnection.getMaxPoolSize() / 2));
+		return new BatchLoader(commitEvery, parallelism, progress).load(sqlStatements);
+	}//end METHOD executeBatch
+
+
 	public List<Unit> fetchAllUnits() {
-		String sql = "SELECT * FROM " + UNIT_TABLE + " ORDER BY unit_name_singular";
+		try(Connection conn = DbConnection.getReadConnection()){
+			startReadOnlyTransaction(conn, Connection.TRANSACTION_READ_COMMITTED);
 		
-		try(Connection conn = DbConnection.getConnection()){
-			startTransaction(conn);
-		
-			try(PreparedStatement stmt = conn.prepareStatement(sql)){
+			try(PreparedStatement stmt = conn.prepareStatement(FETCH_ALL_UNITS_SQL)){
 				try(ResultSet rs = stmt.executeQuery()){
-					List<Unit> units = new LinkedList<>();
-					
-					while(rs.next()) {
-						units.add(extract(rs, Unit.class));
-					}//end WHILE
+					List<Unit> units = extractAll(rs, Unit.class);
 					
+					endReadOnlyTransaction(conn);
 					return units;
 				}//end TRY rs
 			}//end TRY stmt
@@ -264,30 +1161,29 @@ public class RecipeDao extends DaoBase {
 
 
 	public void addIngredientToRecipe(Ingredient ingredient) {
-		String sql = "INSERT INTO " + INGREDIENT_TABLE 
-				+ " (recipe_id, unit_id, ingredient_name, instruction, ingredient_order, amount) "
-				+ "VALUES (?, ?, ?, ?, ?, ?)";
+		Integer previousOrder = ingredient.getIngredientOrder();
 		
 		try(Connection conn = DbConnection.getConnection()){
 			startTransaction(conn);
 			
 			try {
-				Integer order = getNextSequenceNumber(conn, ingredient.getRecipeId(), INGREDIENT_TABLE, "recipe_id");
-			
-				try(PreparedStatement stmt = conn.prepareStatement(sql)){
-					setParameter(stmt, 1, ingredient.getRecipeId(), Integer.class);
-					setParameter(stmt, 2, ingredient.getUnit().getUnitId(), Integer.class);
-					setParameter(stmt, 3, ingredient.getIngredientName(), String.class);
-					setParameter(stmt, 4, ingredient.getInstruction(), String.class);
-					setParameter(stmt, 5, order, Integer.class);
-					setParameter(stmt, 6, ingredient.getAmount(), BigDecimal.class);
+				ingredient.setIngredientOrder(getNextSequenceNumber(conn, INGREDIENT_SEQUENCE, ingredient.getRecipeId()));
+			
+				try(PreparedStatement stmt = conn.prepareStatement(INSERT_INGREDIENT_SQL, Statement.RETURN_GENERATED_KEYS)){
+					INGREDIENT_BINDER.bind(stmt, ingredient);
 					
 					stmt.executeUpdate();
+					Integer ingredientId = getGeneratedKey(stmt);
+					
+					recordChanges(conn, List.of(ingredient.getRecipeId()));
 					commitTransaction(conn);
+					
+					ingredient.setIngredientId(ingredientId);
 				}//end TRY stmt
 				
 			}//end TRY int
 			catch(Exception e) {
+				ingredient.setIngredientOrder(previousOrder);
 				rollbackTransaction(conn);
 				throw new DbException(e);
 			}//end CATCH stmt
@@ -300,24 +1196,29 @@ public class RecipeDao extends DaoBase {
 
 
 	public void addStepToRecipe(Step step) {
-		String sql = "INSERT INTO " + STEP_TABLE + " (recipe_id, step_order, step_text)"
-				+ " VALUES (?, ?, ?)";
-
+		Integer previousOrder = step.getStepOrder();
+		
 		try(Connection conn = DbConnection.getConnection()){
 			startTransaction(conn);
 			
-			Integer order = getNextSequenceNumber(conn, step.getRecipeId(), STEP_TABLE, "recipe_id");
-			
-			try(PreparedStatement stmt = conn.prepareStatement(sql)){
-				setParameter(stmt, 1, step.getRecipeId(), Integer.class);
-				setParameter(stmt, 2, order, Integer.class);
-				setParameter(stmt, 3, step.getStepText(), String.class);
+			try {
+				step.setStepOrder(getNextSequenceNumber(conn, STEP_SEQUENCE, step.getRecipeId()));
 				
-				stmt.executeUpdate();
-				commitTransaction(conn);
-			}//end TRY stmt
+				try(PreparedStatement stmt = conn.prepareStatement(INSERT_STEP_SQL, Statement.RETURN_GENERATED_KEYS)){
+					STEP_BINDER.bind(stmt, step);
+					
+					stmt.executeUpdate();
+					Integer stepId = getGeneratedKey(stmt);
+					
+					recordChanges(conn, List.of(step.getRecipeId()));
+					commitTransaction(conn);
+					
+					step.setStepId(stepId);
+				}//end TRY stmt
+			}//end TRY int
 			
 			catch(Exception e) {
+				step.setStepOrder(previousOrder);
 				rollbackTransaction(conn);
 				throw new DbException(e);
 			}//end CATCH stmt
@@ -330,20 +1231,190 @@ public class RecipeDao extends DaoBase {
 	}//end METHOD addStepToRecipe
 
 
-	public List<Category> fetchAllCategories() {
-		String sql = "SELECT * FROM " + CATEGORY_TABLE + " ORDER BY category_name";
+	/**
+	 * Appends ingredients and steps, possibly to many recipes, in one transaction. Each recipe's
+	 * sequence is read and locked once, the new children are ordered after its existing ones in the
+	 * order given, and each child table is written with a single batch. On success the generated
+	 * keys and orders are set on the entities; on failure nothing is written and the entities are
+	 * left unchanged.
+	 */
+	public void appendChildren(List<Ingredient> ingredients, List<Step> steps) {
+		if(ingredients.isEmpty() && steps.isEmpty()) {
+			return;
+		}//end IF
+		
+		List<Integer> previousIngredientOrders = valuesOf(ingredients, Ingredient::getIngredientOrder);
+		List<Integer> previousStepOrders = valuesOf(steps, Step::getStepOrder);
 		
 		try(Connection conn = DbConnection.getConnection()){
 			startTransaction(conn);
 			
-			try(PreparedStatement stmt = conn.prepareStatement(sql)){
+			try {
+				List<Integer> ingredientOrders = allocateOrders(conn, INGREDIENT_SEQUENCE, valuesOf(ingredients, Ingredient::getRecipeId));
+				List<Integer> stepOrders = allocateOrders(conn, STEP_SEQUENCE, valuesOf(steps, Step::getRecipeId));
+				
+				for(int index = 0; index < ingredients.size(); index++) {
+					ingredients.get(index).setIngredientOrder(ingredientOrders.get(index));
+				}//end FOR
+				
+				for(int index = 0; index < steps.size(); index++) {
+					steps.get(index).setStepOrder(stepOrders.get(index));
+				}//end FOR
+				
+				List<Integer> ingredientIds = appendIngredientRows(conn, ingredients);
+				List<Integer> stepIds = appendStepRows(conn, steps);
+				
+				Set<Integer> recipeIds = new TreeSet<>(valuesOf(ingredients, Ingredient::getRecipeId));
+				recipeIds.addAll(valuesOf(steps, Step::getRecipeId));
+				recordChanges(conn, new ArrayList<>(recipeIds));
+				
+				commitTransaction(conn);
+				
+				for(int index = 0; index < ingredients.size(); index++) {
+					ingredients.get(index).setIngredientId(ingredientIds.get(index));
+				}//end FOR
+				
+				for(int index = 0; index < steps.size(); index++) {
+					steps.get(index).setStepId(stepIds.get(index));
+				}//end FOR
+			}//end TRY
+			catch(Exception e) {
+				for(int index = 0; index < ingredients.size(); index++) {
+					ingredients.get(index).setIngredientOrder(previousIngredientOrders.get(index));
+				}//end FOR
+				
+				for(int index = 0; index < steps.size(); index++) {
+					steps.get(index).setStepOrder(previousStepOrders.get(index));
+				}//end FOR
+				
+				rollbackTransaction(conn);
+				throw new DbException(e);
+			}//end CATCH
+		}//end TRY conn
+		catch (SQLException e) {
+			throw new DbException(e);
+		}//end CATCH conn
+	}//end METHOD appendChildren
+
+
+	private <T> List<Integer> valuesOf(List<T> children, Function<T, Integer> property) {
+		List<Integer> values = new ArrayList<>(children.size());
+		children.forEach(child -> values.add(property.apply(child)));
+		return values;
+	}//end METHOD valuesOf
+
+
+	/*
+	 * Returns an order for each child, in the same positions as recipeIds. The recipes' sequences are
+	 * locked in ascending ID order so that two concurrent appends cannot deadlock on each other.
+	 */
+	private List<Integer> allocateOrders(Connection conn, OrderedChildTable table, List<Integer> recipeIds) throws SQLException {
+		Map<Integer, Integer> nextOrders = new TreeMap<>();
+		
+		for(Integer recipeId : recipeIds) {
+			nextOrders.put(recipeId, null);
+		}//end FOR
+		
+		for(Map.Entry<Integer, Integer> entry : nextOrders.entrySet()) {
+			entry.setValue(getNextSequenceNumber(conn, table, entry.getKey()));
+		}//end FOR
+		
+		List<Integer> orders = new ArrayList<>(recipeIds.size());
+		
+		for(Integer recipeId : recipeIds) {
+			Integer order = nextOrders.get(recipeId);
+			orders.add(order);
+			nextOrders.put(recipeId, order + SEQUENCE_GAP);
+		}//end FOR
+		
+		return orders;
+	}//end METHOD allocateOrders
+
+
+	private List<Integer> appendIngredientRows(Connection conn, List<Ingredient> ingredients) throws SQLException {
+		if(ingredients.isEmpty()) {
+			return List.of();
+		}//end IF
+		
+		try(PreparedStatement stmt = conn.prepareStatement(INSERT_INGREDIENT_SQL, Statement.RETURN_GENERATED_KEYS)){
+			for(Ingredient ingredient : ingredients) {
+				INGREDIENT_BINDER.bind(stmt, ingredient);
+				stmt.addBatch();
+			}//end FOR
+			
+			stmt.executeBatch();
+			return getGeneratedKeys(stmt, ingredients.size());
+		}//end TRY stmt
+	}//end METHOD appendIngredientRows
+
+
+	private List<Integer> appendStepRows(Connection conn, List<Step> steps) throws SQLException {
+		if(steps.isEmpty()) {
+			return List.of();
+		}//end IF
+		
+		try(PreparedStatement stmt = conn.prepareStatement(INSERT_STEP_SQL, Statement.RETURN_GENERATED_KEYS)){
+			for(Step step : steps) {
+				STEP_BINDER.bind(stmt, step);
+				stmt.addBatch();
+			}//end FOR
+			
+			stmt.executeBatch();
+			return getGeneratedKeys(stmt, steps.size());
+		}//end TRY stmt
+	}//end METHOD appendStepRows
+
+
+	/**
+	 * Moves an ingredient so that it directly follows another ingredient of the same recipe, or
+	 * comes first if afterIngredientId is null. Returns the ID of the recipe.
+	 */
+	public Integer moveIngredient(Integer ingredientId, Integer afterIngredientId) {
+		return moveInSequence(INGREDIENT_SEQUENCE, ingredientId, afterIngredientId);
+	}//end METHOD moveIngredient
+
+
+	/**
+	 * Moves a step so that it directly follows another step of the same recipe, or comes first if
+	 * afterStepId is null. Returns the ID of the recipe.
+	 */
+	public Integer moveStep(Integer stepId, Integer afterStepId) {
+		return moveInSequence(STEP_SEQUENCE, stepId, afterStepId);
+	}//end METHOD moveStep
+
+
+	private Integer moveInSequence(OrderedChildTable table, Integer key, Integer afterKey) {
+		try(Connection conn = DbConnection.getConnection()){
+			startTransaction(conn);
+			
+			try {
+				Integer recipeId = moveInSequence(conn, table, key, afterKey);
+				
+				recordChanges(conn, List.of(recipeId));
+				commitTransaction(conn);
+				
+				return recipeId;
+			}//end TRY
+			catch(Exception e) {
+				rollbackTransaction(conn);
+				throw new DbException(e);
+			}//end CATCH
+		}//end TRY conn
+		catch (SQLException e) {
+			throw new DbException(e);
+		}//end CATCH conn
+	}//end METHOD moveInSequence
+
+
+	public List<Category> fetchAllCategories() {
+		try(Connection conn = DbConnection.getReadConnection()){
+			startReadOnlyTransaction(conn, Connection.TRANSACTION_READ_COMMITTED);
+			
+			try(PreparedStatement stmt = conn.prepareStatement(FETCH_ALL_CATEGORIES_SQL)){
 				try(ResultSet rs = stmt.executeQuery()){
-					List<Category> categories = new LinkedList<>();
-					
-					while(rs.next()) {
-						categories.add(extract(rs, Category.class));
-					}//end WHILE
+					List<Category> categories = extractAll(rs, Category.class);
 					
+					endReadOnlyTransaction(conn);
 					return categories;
 				}//end TRY rs
 			}//end TRY stmt
@@ -361,18 +1432,28 @@ public class RecipeDao extends DaoBase {
 
 
 	public void addCategoryToRecipe(Integer recipeId, String category) {
-		String subQuery = "(SELECT category_id FROM " + CATEGORY_TABLE + " WHERE category_name = ?)";
-		
-		String sql = "INSERT INTO " + RECIPE_CATEGORY_TABLE + " (recipe_id, category_id) VALUES (?, " + subQuery + ")";
-		
+		addCategoryToRecipe(INSERT_RECIPE_CATEGORY_BY_NAME_SQL, recipeId, category, String.class);
+	}//end METHOD addCategoryToRecipe
+
+
+	/**
+	 * Adds a category by ID, for callers that already know it. This skips the name lookup subquery.
+	 */
+	public void addCategoryToRecipe(Integer recipeId, Integer categoryId) {
+		addCategoryToRecipe(INSERT_RECIPE_CATEGORY_SQL, recipeId, categoryId, Integer.class);
+	}//end METHOD addCategoryToRecipe
+
+
+	private void addCategoryToRecipe(String sql, Integer recipeId, Object category, Class<?> categoryType) {
 		try(Connection conn = DbConnection.getConnection()){
 			startTransaction(conn);
 			
 			try(PreparedStatement stmt = conn.prepareStatement(sql)){
-				setParameter(stmt, 1, recipeId, Integer.class);
-				setParameter(stmt, 2, category, String.class);
+				setParameter(stmt, 1, recipeId, INTEGER_BINDER);
+				setParameter(stmt, 2, category, categoryType);
 				
-				stmt.executeUpdate()
+				stmt.executeUpdate();
+				recordChanges(conn, List.of(recipeId));
 				commitTransaction(conn);
 			}//end TRY stmt
 			
@@ -388,5 +1469,95 @@ public class RecipeDao extends DaoBase {
 	}//end METHOD addCategoryToRecipe
 
 
+	/**
+	 * Writes one row per recipe to the change log, in the caller's transaction, so the change is
+	 * visible to other nodes exactly when the write commits.
+	 */
+	private void recordChanges(Connection conn, List<Integer> recipeIds) throws SQLException {
+		try(PreparedStatement stmt = conn.prepareStatement(INSERT_RECIPE_CHANGE_SQL)){
+			for(Integer recipeId : recipeIds) {
+				setParameter(stmt, 1, recipeId, INTEGER_BINDER);
+				stmt.addBatch();
+			}//end FOR
+			
+			stmt.executeBatch();
+		}//end TRY stmt
+	}//end METHOD recordChanges
+
+
+	/**
+	 * Returns up to limit change log rows with an ID greater than afterChangeId, oldest first.
+	 */
+	public List<RecipeChange> fetchChangesSince(long afterChangeId, int limit) {
+		try(Connection conn = DbConnection.getConnection()){
+			try(PreparedStatement stmt = conn.prepareStatement(FETCH_CHANGES_SINCE_SQL)){
+				stmt.setLong(1, afterChangeId);
+				setParameter(stmt, 2, limit, INTEGER_BINDER);
+				
+				try(ResultSet rs = stmt.executeQuery()){
+					List<RecipeChange> changes = extractAll(rs, RecipeChange.class);
+					
+					return changes;
+				}//end TRY rs
+			}//end TRY stmt
+		}//end TRY conn
+		catch (SQLException e) {
+			throw new DbException(e);
+		}//end CATCH conn
+	}//end METHOD fetchChangesSince
+
+
+	/**
+	 * Returns the newest change log ID, or zero if the log is empty.
+	 */
+	public long fetchLatestChangeId() {
+		try(Connection conn = DbConnection.getConnection()){
+			try(PreparedStatement stmt = conn.prepareStatement(FETCH_LATEST_CHANGE_ID_SQL)){
+				try(ResultSet rs = stmt.executeQuery()){
+					return rs.next() ? rs.getLong(1) : 0;
+				}//end TRY rs
+			}//end TRY stmt
+		}//end TRY conn
+		catch (SQLException e) {
+			throw new DbException(e);
+		}//end CATCH conn
+	}//end METHOD fetchLatestChangeId
+
+
+	/**
+	 * Returns the change log's epoch, a value written when the schema is loaded, or null if the
+	 * schema is part way through loading. A different epoch means the log has been re-created and
+	 * its change IDs started again.
+	 */
+	public String fetchChangeEpoch() {
+		try(Connection conn = DbConnection.getConnection()){
+			try(PreparedStatement stmt = conn.prepareStatement(FETCH_CHANGE_EPOCH_SQL)){
+				try(ResultSet rs = stmt.executeQuery()){
+					return rs.next() ? rs.getString(1) : null;
+				}//end TRY rs
+			}//end TRY stmt
+		}//end TRY conn
+		catch (SQLException e) {
+			throw new DbException(e);
+		}//end CATCH conn
+	}//end METHOD fetchChangeEpoch
+
+
+	/**
+	 * Deletes change log rows older than the given time. Returns the number of rows deleted.
+	 */
+	public int pruneChanges(LocalDateTime olderThan) {
+		try(Connection conn = DbConnection.getConnection()){
+			try(PreparedStatement stmt = conn.prepareStatement(DELETE_CHANGES_BEFORE_SQL)){
+				stmt.setTimestamp(1, Timestamp.valueOf(olderThan));
+				return stmt.executeUpdate();
+			}//end TRY stmt
+		}//end TRY conn
+		catch (SQLException e) {
+			throw new DbException(e);
+		}//end CATCH conn
+	}//end METHOD pruneChanges
+
+
 	
 }//end CLASS
\ No newline at end of file
@@ -0,0 +1,38 @@
+package recipes.dao;
+
+import java.util.List;
+import java.util.Objects;
+
+import recipes.entity.Recipe;
+
+/**
+ * One page of recipes from {@link RecipeDao#fetchRecipePage(int, String)}. The continuation token
+ * is opaque to callers; pass it back to get the next page. It is null on the last page.
+ */
+public class RecipePage {
+	private final List<Recipe> recipes;
+	private final String continuationToken;
+
+	public RecipePage(List<Recipe> recipes, String continuationToken) {
+		this.recipes = recipes;
+		this.continuationToken = continuationToken;
+	}//end CONSTRUCTOR
+
+	public List<Recipe> getRecipes() {
+		return recipes;
+	}
+
+	public String getContinuationToken() {
+		return continuationToken;
+	}
+
+	public boolean hasNext() {
+		return Objects.nonNull(continuationToken);
+	}
+
+	@Override
+	public String toString() {
+		return "RecipePage [recipes=" + recipes.size() + ", hasNext=" + hasNext() + "]";
+	}
+
+}
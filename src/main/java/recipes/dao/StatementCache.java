@@ -0,0 +1,321 @@
+package recipes.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The prepared statements of one physical connection, kept open between borrows and reused by SQL
+ * text. With useServerPrepStmts on the URL the driver prepares each statement on the server once,
+ * and later executions send only the parameters.
+ *
+ * A statement handed out by {@link #prepare(Connection, Method, Object[])} is a proxy. Closing it
+ * clears its parameters and puts it back in the cache instead of closing it. The cache holds at
+ * most capacity statements and drops the least recently used one when it is full; a dropped
+ * statement that is still in use is closed when its user closes it. A statement whose settings a
+ * caller changes (fetch size, timeout and so on) is closed rather than reused, so the settings
+ * cannot leak into the next caller. Statements the borrower did not close are closed by
+ * {@link #closeOpenStatements()} when the connection goes back to the pool.
+ *
+ * A connection is used by one borrower at a time, so the cache is only locked to keep a stream
+ * closed on another thread safe.
+ */
+class StatementCache {
+	private static final Set<String> SETTINGS = Set.of("setFetchSize", "setFetchDirection", "setMaxRows",
+			"setLargeMaxRows", "setMaxFieldSize", "setQueryTimeout", "setEscapeProcessing", "setPoolable",
+			"setCursorName", "closeOnCompletion");
+
+	private final Connection physical;
+	private final int capacity;
+	private final Counters counters;
+	private final LinkedHashMap<List<Object>, CachedStatement> entries;
+	private final Set<StatementHandle> open = new HashSet<>();
+
+	StatementCache(Connection physical, int capacity, Counters counters) {
+		this.physical = physical;
+		this.capacity = capacity;
+		this.counters = counters;
+
+		/* Access order makes the eldest entry the least recently used one. */
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<List<Object>, CachedStatement> eldest) {
+				if(size() <= StatementCache.this.capacity) {
+					return false;
+				}//end IF
+
+				counters.evictions.increment();
+				drop(eldest.getValue());
+				return true;
+			}//end METHOD removeEldestEntry
+		};
+	}//end CONSTRUCTOR
+
+	/**
+	 * Only the overloads that take the SQL and int options are cached; the ones that take column
+	 * arrays are rare and are passed through.
+	 */
+	static boolean isCacheable(Method method) {
+		if(!method.getName().equals("prepareStatement")) {
+			return false;
+		}//end IF
+
+		for(Class<?> type : method.getParameterTypes()) {
+			if(type != String.class && type != int.class) {
+				return false;
+			}//end IF
+		}//end FOR
+
+		return true;
+	}//end METHOD isCacheable
+
+	/**
+	 * Returns a statement for the arguments of a prepareStatement call, from the cache if a matching
+	 * statement is idle. If the matching statement is in use, as with a query run while another
+	 * result set from the same SQL is open, a new statement is prepared and closed after use.
+	 */
+	synchronized PreparedStatement prepare(Connection owner, Method method, Object[] args) throws SQLException {
+		List<Object> key = Arrays.asList(args);
+		CachedStatement entry = entries.get(key);
+
+		if(Objects.nonNull(entry) && !entry.inUse) {
+			counters.hits.increment();
+			entry.inUse = true;
+			return entry.newHandle(owner);
+		}//end IF
+
+		counters.misses.increment();
+		CachedStatement created = new CachedStatement(key, invoke(method, args));
+		created.inUse = true;
+
+		if(Objects.isNull(entry)) {
+			entries.put(key, created);
+			counters.cached.increment();
+		}//end IF
+		else {
+			created.retained = false;
+		}//end ELSE
+
+		return created.newHandle(owner);
+	}//end METHOD prepare
+
+	/**
+	 * Closes every statement handed out since the connection was borrowed that the borrower did not
+	 * close, so that none of them can be used once the connection belongs to somebody else and their
+	 * statements are free for the next borrower.
+	 */
+	void closeOpenStatements() {
+		List<StatementHandle> handles;
+
+		/* Closed outside the lock, because a handle locks itself before the cache. */
+		synchronized(this) {
+			handles = new ArrayList<>(open);
+		}//end SYNCHRONIZED
+
+		for(StatementHandle handle : handles) {
+			handle.close();
+		}//end FOR
+	}//end METHOD closeOpenStatements
+
+	/*
+	 * Called when a caller closes its statement. The statement goes back in the cache if it is still
+	 * cached and nothing about it changed; otherwise it is closed.
+	 */
+	private synchronized void release(StatementHandle handle) {
+		CachedStatement entry = handle.entry;
+		open.remove(handle);
+		entry.inUse = false;
+
+		if(entry.retained && !entry.settingsChanged) {
+			try {
+				ResultSet rs = entry.statement.getResultSet();
+
+				if(Objects.nonNull(rs)) {
+					rs.close();
+				}//end IF
+
+				entry.statement.clearParameters();
+				entry.statement.clearBatch();
+				entry.statement.clearWarnings();
+				return;
+			}//end TRY
+			catch(SQLException e) {
+				/* A statement that cannot be reset is not worth keeping. */
+			}//end CATCH
+		}//end IF
+
+		if(entry.retained && entries.remove(entry.key, entry)) {
+			counters.cached.decrement();
+		}//end IF
+
+		entry.retained = false;
+		closeQuietly(entry);
+	}//end METHOD release
+
+	private void drop(CachedStatement entry) {
+		counters.cached.decrement();
+		entry.retained = false;
+
+		if(!entry.inUse) {
+			closeQuietly(entry);
+		}//end IF
+	}//end METHOD drop
+
+	/**
+	 * Forgets every statement when the physical connection is closed. The driver closes the
+	 * statements along with the connection.
+	 */
+	synchronized void discard() {
+		Iterator<CachedStatement> it = entries.values().iterator();
+
+		while(it.hasNext()) {
+			it.next().retained = false;
+			counters.cached.decrement();
+			it.remove();
+		}//end WHILE
+	}//end METHOD discard
+
+	private Object invoke(Method method, Object[] args) throws SQLException {
+		try {
+			return method.invoke(physical, args);
+		}//end TRY
+		catch(InvocationTargetException e) {
+			throw e.getCause() instanceof SQLException ? (SQLException)e.getCause() : new SQLException(e.getCause());
+		}//end CATCH
+		catch(IllegalAccessException e) {
+			throw new SQLException(e);
+		}//end CATCH
+	}//end METHOD invoke
+
+	private void closeQuietly(CachedStatement entry) {
+		try {
+			entry.statement.close();
+		}//end TRY
+		catch(SQLException e) {
+			/* The statement is being discarded anyway. */
+		}//end CATCH
+	}//end METHOD closeQuietly
+
+	/**
+	 * Pool-wide counters, shared by the caches of every connection in a pool.
+	 */
+	static class Counters {
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder misses = new LongAdder();
+		private final LongAdder evictions = new LongAdder();
+		private final LongAdder cached = new LongAdder();
+
+		StatementCacheStats snapshot(int capacity) {
+			return new StatementCacheStats(hits.sum(), misses.sum(), evictions.sum(), cached.sum(), capacity);
+		}//end METHOD snapshot
+	}//end CLASS Counters
+
+	/**
+	 * A physical statement and whether it is checked out. Retained is false once the statement is no
+	 * longer in the cache, so it is closed instead of kept when it is released.
+	 */
+	private class CachedStatement {
+		private final List<Object> key;
+		private final PreparedStatement statement;
+		private boolean inUse;
+		private boolean retained = true;
+		private volatile boolean settingsChanged;
+
+		CachedStatement(List<Object> key, Object statement) {
+			this.key = key;
+			this.statement = (PreparedStatement)statement;
+		}//end CONSTRUCTOR
+
+		/* Called with the cache locked. */
+		PreparedStatement newHandle(Connection owner) {
+			StatementHandle handle = new StatementHandle(this, owner);
+			open.add(handle);
+
+			return (PreparedStatement)Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+					new Class<?>[] {PreparedStatement.class}, handle);
+		}//end METHOD newHandle
+	}//end CLASS CachedStatement
+
+	/**
+	 * The {@link PreparedStatement} given to callers. Each checkout gets its own handle, so closing a
+	 * handle twice, or using it after closing it, cannot affect the next caller.
+	 */
+	private class StatementHandle implements InvocationHandler {
+		private final CachedStatement entry;
+		private final Connection owner;
+		private volatile boolean closed;
+
+		StatementHandle(CachedStatement entry, Connection owner) {
+			this.entry = entry;
+			this.owner = owner;
+		}//end CONSTRUCTOR
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+
+			switch(name) {
+				case "close":
+					close();
+					return null;
+
+				case "isClosed":
+					return closed;
+
+				case "getConnection":
+					return owner;
+
+				case "equals":
+					return proxy == args[0];
+
+				case "hashCode":
+					return System.identityHashCode(proxy);
+
+				case "toString":
+					return "Cached" + (closed ? "[closed]" : entry.statement.toString());
+
+				default:
+					break;
+			}//end SWITCH
+
+			if(closed) {
+				throw new SQLException("Statement is closed");
+			}//end IF
+
+			if(SETTINGS.contains(name)) {
+				entry.settingsChanged = true;
+			}//end IF
+
+			try {
+				return method.invoke(entry.statement, args);
+			}//end TRY
+			catch(InvocationTargetException e) {
+				throw e.getCause();
+			}//end CATCH
+		}//end METHOD invoke
+
+		synchronized void close() {
+			if(!closed) {
+				closed = true;
+				release(this);
+			}//end IF
+		}//end METHOD close
+	}//end CLASS StatementHandle
+}//end CLASS
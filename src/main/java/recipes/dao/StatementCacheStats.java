@@ -0,0 +1,64 @@
+package recipes.dao;
+
+/**
+ * A point-in-time copy of the prepared statement cache counters, summed over every connection in a
+ * pool. The capacity is per connection.
+ */
+public class StatementCacheStats {
+	private final long hits;
+	private final long misses;
+	private final long evictions;
+	private final long cached;
+	private final int capacity;
+
+	public StatementCacheStats(long hits, long misses, long evictions, long cached, int capacity) {
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.cached = cached;
+		this.capacity = capacity;
+	}//end CONSTRUCTOR
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * The number of statements held open across all connections.
+	 */
+	public long getCached() {
+		return cached;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public double getHitRate() {
+		long requests = hits + misses;
+		return requests == 0 ? 0.0 : (double)hits / requests;
+	}
+
+	/**
+	 * Adds another pool's counters to these, for reporting the primary and replica pools together.
+	 */
+	public StatementCacheStats plus(StatementCacheStats other) {
+		return new StatementCacheStats(hits + other.hits, misses + other.misses, evictions + other.evictions,
+				cached + other.cached, Math.max(capacity, other.capacity));
+	}
+
+	@Override
+	public String toString() {
+		return String.format("StatementCacheStats [hits=%d, misses=%d, hitRate=%.3f, evictions=%d, cached=%d, capacity=%d]",
+				hits, misses, getHitRate(), evictions, cached, capacity);
+	}
+
+}
@@ -0,0 +1,274 @@
+package recipes.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import recipes.exception.DbException;
+
+/**
+ * Binds one connection and one transaction to the calling thread for the length of a block of
+ * work. While the block runs, {@link DbConnection#getConnection()} and
+ * {@link DbConnection#getReadConnection()} hand every DAO method the same connection, and the DAO's
+ * own transaction calls take part in the outer transaction instead of committing it:
+ * setReadOnly and setTransactionIsolation do nothing, and close does not return the connection to
+ * the pool. Each DAO method gets its own view of the connection, and turning auto-commit off takes
+ * a savepoint; commit moves the savepoint on, and rollback rolls back to it. A DAO method that rolls
+ * back and carries on, like an import that retries a failed chunk one recipe at a time, therefore
+ * undoes only its own work since its last commit. If the savepoint is gone (MySQL rolls back the
+ * whole transaction when it picks it as a deadlock victim) the unit of work is marked rollback-only
+ * instead. The block's changes are committed together when it returns, or rolled back if it throws
+ * or was marked rollback-only.
+ *
+ * A unit of work started inside another one simply joins it.
+ */
+public final class UnitOfWork {
+	private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+
+	private final Connection conn;
+	private final List<Runnable> afterCompletion = new ArrayList<>();
+	private boolean rollbackOnly;
+
+	private UnitOfWork(Connection conn) {
+		this.conn = conn;
+	}//end CONSTRUCTOR
+
+	/**
+	 * Runs work in a unit of work and returns its result.
+	 */
+	public static <T> T call(Supplier<T> work) {
+		UnitOfWork current = CURRENT.get();
+
+		if(Objects.nonNull(current)) {
+			return work.get();
+		}//end IF
+
+		try(Connection conn = DbConnection.getConnection()){
+			UnitOfWork unit = new UnitOfWork(conn);
+			conn.setAutoCommit(false);
+			CURRENT.set(unit);
+
+			try {
+				T result = work.get();
+				unit.complete();
+				return result;
+			}//end TRY
+			catch(RuntimeException e) {
+				unit.rollback(e);
+				throw e;
+			}//end CATCH
+			finally {
+				CURRENT.remove();
+				unit.runAfterCompletion();
+			}//end FINALLY
+		}//end TRY conn
+		catch (SQLException e) {
+			throw new DbException(e);
+		}//end CATCH conn
+	}//end METHOD call
+
+	/**
+	 * Runs work in a unit of work.
+	 */
+	public static void run(Runnable work) {
+		call(() -> {
+			work.run();
+			return null;
+		});
+	}//end METHOD run
+
+	public static boolean isActive() {
+		return Objects.nonNull(CURRENT.get());
+	}//end METHOD isActive
+
+	/**
+	 * Makes the current unit of work roll back instead of committing when it ends.
+	 */
+	public static void setRollbackOnly() {
+		requireCurrent().rollbackOnly = true;
+	}//end METHOD setRollbackOnly
+
+	/**
+	 * Runs action once the current unit of work has committed or rolled back, or right away if there
+	 * is no unit of work. This is for work, like cache eviction, that must not happen before the
+	 * transaction's changes are visible to other connections.
+	 */
+	public static void afterCompletion(Runnable action) {
+		UnitOfWork current = CURRENT.get();
+
+		if(Objects.isNull(current)) {
+			action.run();
+		}//end IF
+		else {
+			current.afterCompletion.add(action);
+		}//end ELSE
+	}//end METHOD afterCompletion
+
+	/*
+	 * Returns a view of the thread's shared connection for one DAO method, or null if no unit of work
+	 * is active.
+	 */
+	static Connection currentConnection() {
+		UnitOfWork current = CURRENT.get();
+
+		if(Objects.isNull(current)) {
+			return null;
+		}//end IF
+
+		return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] {Connection.class}, current.new Participant());
+	}//end METHOD currentConnection
+
+	private static UnitOfWork requireCurrent() {
+		UnitOfWork current = CURRENT.get();
+
+		if(Objects.isNull(current)) {
+			throw new IllegalStateException("No unit of work is active");
+		}//end IF
+
+		return current;
+	}//end METHOD requireCurrent
+
+	private void complete() throws SQLException {
+		if(rollbackOnly) {
+			conn.rollback();
+			throw new DbException("Unit of work was marked rollback-only and has been rolled back");
+		}//end IF
+
+		conn.commit();
+		DbConnection.recordWrite();
+	}//end METHOD complete
+
+	private void rollback(RuntimeException cause) {
+		try {
+			conn.rollback();
+		}//end TRY
+		catch(SQLException e) {
+			cause.addSuppressed(e);
+		}//end CATCH
+	}//end METHOD rollback
+
+	private void runAfterCompletion() {
+		for(Runnable action : afterCompletion) {
+			try {
+				action.run();
+			}//end TRY
+			catch(RuntimeException e) {
+				System.out.println("Unit of work completion action failed: " + e);
+			}//end CATCH
+		}//end FOR
+	}//end METHOD runAfterCompletion
+
+	/**
+	 * The connection handed to a DAO method inside the unit of work. Transaction control is mapped
+	 * onto a savepoint; everything else is passed through.
+	 */
+	private class Participant implements InvocationHandler {
+		/* Where the DAO method's current transaction began, while it has auto-commit off. */
+		private Savepoint savepoint;
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch(method.getName()) {
+				case "setReadOnly":
+				case "setTransactionIsolation":
+					return null;
+
+				case "setAutoCommit":
+					if(Boolean.FALSE.equals(args[0])) {
+						if(Objects.isNull(savepoint)) {
+							savepoint = conn.setSavepoint();
+						}//end IF
+					}//end IF
+					else {
+						releaseSavepoint();
+					}//end ELSE
+					return null;
+
+				case "commit":
+					if(Objects.nonNull(savepoint)) {
+						releaseSavepoint();
+						savepoint = conn.setSavepoint();
+					}//end IF
+					return null;
+
+				case "close":
+					releaseSavepoint();
+					return null;
+
+				case "rollback":
+					if(Objects.isNull(args)) {
+						rollbackToSavepoint();
+						return null;
+					}//end IF
+					break;
+
+				case "getAutoCommit":
+					return false;
+
+				case "equals":
+					return proxy == args[0];
+
+				case "hashCode":
+					return System.identityHashCode(proxy);
+
+				default:
+					break;
+			}//end SWITCH
+
+			try {
+				return method.invoke(conn, args);
+			}//end TRY
+			catch(InvocationTargetException e) {
+				throw e.getCause();
+			}//end CATCH
+		}//end METHOD invoke
+
+		/*
+		 * Undoes the DAO method's work since its last commit and starts a new savepoint, as a rollback
+		 * on a plain connection starts a new transaction.
+		 */
+		private void rollbackToSavepoint() {
+			if(Objects.isNull(savepoint)) {
+				rollbackOnly = true;
+				return;
+			}//end IF
+
+			try {
+				conn.rollback(savepoint);
+				savepoint = conn.setSavepoint();
+			}//end TRY
+			catch(SQLException e) {
+				savepoint = null;
+				rollbackOnly = true;
+			}//end CATCH
+		}//end METHOD rollbackToSavepoint
+
+		/*
+		 * A savepoint that cannot be released no longer exists, because the server rolled back the
+		 * whole transaction, so the unit of work cannot commit either.
+		 */
+		private void releaseSavepoint() {
+			if(Objects.isNull(savepoint)) {
+				return;
+			}//end IF
+
+			try {
+				conn.releaseSavepoint(savepoint);
+			}//end TRY
+			catch(SQLException e) {
+				rollbackOnly = true;
+			}//end CATCH
+
+			savepoint = null;
+		}//end METHOD releaseSavepoint
+	}//end CLASS Participant
+}//end CLASS
@@ -0,0 +1,35 @@
+package recipes.entity;
+
+import java.time.LocalDateTime;
+
+public class RecipeChange {
+	private Long changeId;
+	private Integer recipeId;
+	private LocalDateTime changedAt;
+	
+	
+	public Long getChangeId() {
+		return changeId;
+	}
+	public void setChangeId(Long changeId) {
+		this.changeId = changeId;
+	}
+	public Integer getRecipeId() {
+		return recipeId;
+	}
+	public void setRecipeId(Integer recipeId) {
+		this.recipeId = recipeId;
+	}
+	public LocalDateTime getChangedAt() {
+		return changedAt;
+	}
+	public void setChangedAt(LocalDateTime changedAt) {
+		this.changedAt = changedAt;
+	}
+	
+	@Override
+	public String toString() {
+		return "ID=" + changeId + ", recipeId=" + recipeId + ", changedAt=" + changedAt;
+	}
+	
+}
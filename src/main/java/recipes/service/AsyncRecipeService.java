@@ -0,0 +1,161 @@
+package recipes.service;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import recipes.dao.DbConnection;
+import recipes.dao.FetchPlan;
+import recipes.dao.RecipePage;
+import recipes.entity.Category;
+import recipes.entity.Ingredient;
+import recipes.entity.Recipe;
+import recipes.entity.Step;
+import recipes.entity.Unit;
+
+/**
+ * A non-blocking view of {@link RecipeService}. Every method runs the matching service call on an
+ * executor and returns a {@link CompletableFuture}.
+ *
+ * On Java 21 and later each call gets its own virtual thread; on older JVMs a fixed pool of
+ * platform threads is used. Either way no more than maxConcurrency calls run at once, so fanning
+ * out many requests queues them here instead of exhausting the connection pool.
+ */
+public class AsyncRecipeService implements AutoCloseable {
+	private final RecipeService recipeService;
+	private final ExecutorService executor;
+	private final Semaphore permits;
+	private final boolean virtualThreads;
+
+	/**
+	 * Limits concurrency to the size of the connection pool.
+	 */
+	public AsyncRecipeService(RecipeService recipeService) {
+		this(recipeService, DbConnection.getMaxPoolSize());
+	}//end CONSTRUCTOR
+
+	public AsyncRecipeService(RecipeService recipeService, int maxConcurrency) {
+		if(maxConcurrency < 1) {
+			throw new IllegalArgumentException("Concurrency must be at least 1");
+		}//end IF
+
+		this.recipeService = recipeService;
+		this.permits = new Semaphore(maxConcurrency);
+
+		ExecutorService virtual = newVirtualThreadExecutor();
+		this.virtualThreads = virtual != null;
+		this.executor = virtualThreads ? virtual : newPlatformThreadExecutor(maxConcurrency);
+	}//end CONSTRUCTOR
+
+	public boolean isUsingVirtualThreads() {
+		return virtualThreads;
+	}//end METHOD isUsingVirtualThreads
+
+	public CompletableFuture<Recipe> fetchRecipeById(Integer recipeId) {
+		return submit(() -> recipeService.fetchRecipeById(recipeId));
+	}//end METHOD fetchRecipeById
+
+	public CompletableFuture<List<Recipe>> fetchRecipesByIds(Collection<Integer> recipeIds) {
+		return submit(() -> recipeService.fetchRecipesByIds(recipeIds));
+	}//end METHOD fetchRecipesByIds
+
+	public CompletableFuture<List<Recipe>> fetchRecipes(FetchPlan plan) {
+		return submit(() -> recipeService.fetchRecipes(plan));
+	}//end METHOD fetchRecipes
+
+	public CompletableFuture<RecipePage> fetchRecipePage(int pageSize, String continuationToken) {
+		return submit(() -> recipeService.fetchRecipePage(pageSize, continuationToken));
+	}//end METHOD fetchRecipePage
+
+	public CompletableFuture<List<Unit>> fetchUnits() {
+		return submit(recipeService::fetchUnits);
+	}//end METHOD fetchUnits
+
+	public CompletableFuture<List<Category>> fetchCategories() {
+		return submit(recipeService::fetchCategories);
+	}//end METHOD fetchCategories
+
+	public CompletableFuture<Recipe> addRecipe(Recipe recipe) {
+		return submit(() -> recipeService.addRecipe(recipe));
+	}//end METHOD addRecipe
+
+	public CompletableFuture<Recipe> addRecipeGraph(Recipe recipe) {
+		return submit(() -> recipeService.addRecipeGraph(recipe));
+	}//end METHOD addRecipeGraph
+
+	public CompletableFuture<Void> addIngredient(Ingredient ingredient) {
+		return run(() -> recipeService.addIngredient(ingredient));
+	}//end METHOD addIngredient
+
+	public CompletableFuture<Void> addStep(Step step) {
+		return run(() -> recipeService.addStep(step));
+	}//end METHOD addStep
+
+	public CompletableFuture<Void> addCategoryToRecipe(Integer recipeId, String category) {
+		return run(() -> recipeService.addCategoryToRecipe(recipeId, category));
+	}//end METHOD addCategoryToRecipe
+
+	/**
+	 * Stops accepting new calls. Calls already submitted still complete.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+	}//end METHOD close
+
+	private CompletableFuture<Void> run(Runnable task) {
+		return submit(() -> {
+			task.run();
+			return null;
+		});
+	}//end METHOD run
+
+	private <T> CompletableFuture<T> submit(Supplier<T> task) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				permits.acquire();
+			}//end TRY
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CompletionException(e);
+			}//end CATCH
+
+			try {
+				return task.get();
+			}//end TRY
+			finally {
+				permits.release();
+			}//end FINALLY
+		}, executor);
+	}//end METHOD submit
+
+	/*
+	 * Looked up reflectively so that the code still compiles and runs on Java 11.
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService)factory.invoke(null);
+		}//end TRY
+		catch(ReflectiveOperationException e) {
+			return null;
+		}//end CATCH
+	}//end METHOD newVirtualThreadExecutor
+
+	private static ExecutorService newPlatformThreadExecutor(int size) {
+		AtomicInteger count = new AtomicInteger();
+
+		return Executors.newFixedThreadPool(size, runnable -> {
+			Thread thread = new Thread(runnable, "async-recipe-service-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}//end METHOD newPlatformThreadExecutor
+}//end CLASS
@@ -0,0 +1,52 @@
+package recipes.service;
+
+/**
+ * A point-in-time copy of a cache's counters.
+ */
+public class CacheStats {
+	private final long hits;
+	private final long misses;
+	private final long evictions;
+	private final int size;
+	private final int maxSize;
+
+	public CacheStats(long hits, long misses, long evictions, int size, int maxSize) {
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.size = size;
+		this.maxSize = maxSize;
+	}//end CONSTRUCTOR
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getEvictions() {
+		return evictions;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public double getHitRate() {
+		long requests = hits + misses;
+		return requests == 0 ? 0.0 : (double)hits / requests;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("CacheStats [hits=%d, misses=%d, hitRate=%.3f, evictions=%d, size=%d/%d]", hits,
+				misses, getHitRate(), evictions, size, maxSize);
+	}
+
+}
@@ -0,0 +1,98 @@
+package recipes.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import recipes.entity.Recipe;
+
+/**
+ * A least-recently-used cache of full recipe graphs keyed by recipe ID, bounded by entry count.
+ * Every write to a recipe must call {@link #invalidate(Integer)} so that the next read loads the
+ * new graph.
+ *
+ * Cached recipes are shared between callers and must be treated as read-only.
+ */
+public class RecipeCache {
+	private final int maxEntries;
+	private final LinkedHashMap<Integer, Recipe> entries;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long invalidations;
+
+	public RecipeCache(int maxEntries) {
+		if(maxEntries < 1) {
+			throw new IllegalArgumentException("Cache size must be at least 1");
+		}//end IF
+
+		this.maxEntries = maxEntries;
+
+		/* Access order makes iteration order least-recently-used first. */
+		this.entries = new LinkedHashMap<Integer, Recipe>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Recipe> eldest) {
+				if(size() > RecipeCache.this.maxEntries) {
+					evictions++;
+					return true;
+				}//end IF
+
+				return false;
+			}//end METHOD removeEldestEntry
+		};
+	}//end CONSTRUCTOR
+
+	/**
+	 * Returns the cached recipe, or null on a miss.
+	 */
+	public synchronized Recipe get(Integer recipeId) {
+		Recipe recipe = entries.get(recipeId);
+
+		if(recipe == null) {
+			misses++;
+		}//end IF
+		else {
+			hits++;
+		}//end ELSE
+
+		return recipe;
+	}//end METHOD get
+
+	public synchronized void put(Integer recipeId, Recipe recipe) {
+		entries.put(recipeId, recipe);
+	}//end METHOD put
+
+	/**
+	 * Caches a recipe that was loaded after {@link #getWriteStamp()} returned the given stamp, unless
+	 * something has been invalidated since. This keeps a slow load that raced with a write from
+	 * putting the old graph back into the cache.
+	 */
+	public synchronized void putIfUnchanged(Integer recipeId, Recipe recipe, long writeStamp) {
+		if(invalidations == writeStamp) {
+			entries.put(recipeId, recipe);
+		}//end IF
+	}//end METHOD putIfUnchanged
+
+	/**
+	 * Returns a counter that changes on every invalidation. Take it before loading a recipe and pass
+	 * it to {@link #putIfUnchanged(Integer, Recipe, long)}.
+	 */
+	public synchronized long getWriteStamp() {
+		return invalidations;
+	}//end METHOD getWriteStamp
+
+	public synchronized void invalidate(Integer recipeId) {
+		invalidations++;
+		entries.remove(recipeId);
+	}//end METHOD invalidate
+
+	public synchronized void invalidateAll() {
+		invalidations++;
+		entries.clear();
+	}//end METHOD invalidateAll
+
+	public synchronized CacheStats getStats() {
+		return new CacheStats(hits, misses, evictions, entries.size(), maxEntries);
+	}//end METHOD getStats
+}//end CLASS
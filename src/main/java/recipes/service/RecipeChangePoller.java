@@ -0,0 +1,144 @@
+package recipes.service;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import recipes.dao.RecipeDao;
+import recipes.entity.RecipeChange;
+
+/**
+ * Polls the recipe change log and reports every changed recipe ID, so that a node can evict
+ * recipes that another node has written. A recipe cached here is therefore at most about one poll
+ * interval out of date.
+ *
+ * Polling starts from the newest change at the time {@link #start()} is called. When the tables
+ * are re-created the log starts again with a new epoch (see {@link RecipeDao#fetchChangeEpoch()}),
+ * which every poll checks first. On a new epoch every recipe is treated as changed, however far the
+ * new log has got by then.
+ *
+ * Change IDs are assigned when a row is inserted but become visible when its transaction commits,
+ * so a lower ID can appear after a higher one has been read. Skipped IDs are remembered and looked
+ * for again for GAP_TIMEOUT_MILLIS, after which they are assumed to belong to rolled-back
+ * transactions.
+ */
+public class RecipeChangePoller {
+	private static final int BATCH_SIZE = 500;
+	private static final long GAP_TIMEOUT_MILLIS = 30_000;
+	private static final int MAX_TRACKED_GAP = 1_000;
+
+	private final RecipeDao recipeDao;
+	private final long intervalMillis;
+	private final Consumer<Integer> onChange;
+	private final Runnable onReset;
+	private ScheduledExecutorService scheduler;
+	private long lastChangeId;
+	private String epoch;
+	private final TreeMap<Long, Long> gaps = new TreeMap<>();
+
+	/**
+	 * @param onChange Called with the ID of each changed recipe.
+	 * @param onReset Called when the change log has been reset and changes may have been missed.
+	 */
+	public RecipeChangePoller(RecipeDao recipeDao, long intervalMillis, Consumer<Integer> onChange,
+			Runnable onReset) {
+		this.recipeDao = recipeDao;
+		this.intervalMillis = intervalMillis;
+		this.onChange = onChange;
+		this.onReset = onReset;
+	}//end CONSTRUCTOR
+
+	public synchronized void start() {
+		if(scheduler != null) {
+			return;
+		}//end IF
+
+		epoch = recipeDao.fetchChangeEpoch();
+		lastChangeId = recipeDao.fetchLatestChangeId();
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "recipe-change-poller");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		scheduler.scheduleWithFixedDelay(this::pollSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}//end METHOD start
+
+	public synchronized void stop() {
+		if(scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}//end IF
+	}//end METHOD stop
+
+	private void pollSafely() {
+		try {
+			poll();
+		}//end TRY
+		catch(RuntimeException e) {
+			/* The database may be briefly unavailable. Try again on the next pass. */
+			System.out.println("Recipe change poll failed: " + e);
+		}//end CATCH
+	}//end METHOD pollSafely
+
+	/**
+	 * Reads all changes since the last poll in batches and reports them.
+	 */
+	void poll() {
+		String currentEpoch = recipeDao.fetchChangeEpoch();
+
+		if(Objects.isNull(currentEpoch)) {
+			/* The tables are being re-created. The new epoch is seen once they are loaded. */
+			return;
+		}//end IF
+
+		if(!currentEpoch.equals(epoch)) {
+			/* Read before the reset, so changes made after it are polled normally. */
+			lastChangeId = recipeDao.fetchLatestChangeId();
+			epoch = currentEpoch;
+			gaps.clear();
+			onReset.run();
+			return;
+		}//end IF
+
+		long now = System.currentTimeMillis();
+		gaps.values().removeIf(firstMissed -> now - firstMissed > GAP_TIMEOUT_MILLIS);
+
+		long floor = gaps.isEmpty() ? lastChangeId : gaps.firstKey() - 1;
+		List<RecipeChange> changes;
+
+		do {
+			changes = recipeDao.fetchChangesSince(floor, BATCH_SIZE);
+
+			for(RecipeChange change : changes) {
+				long changeId = change.getChangeId();
+				floor = changeId;
+
+				if(changeId > lastChangeId) {
+					rememberGaps(lastChangeId, changeId, now);
+					lastChangeId = changeId;
+					onChange.accept(change.getRecipeId());
+				}//end IF
+				else if(gaps.remove(changeId) != null) {
+					/* A transaction that was still open on an earlier poll has committed. */
+					onChange.accept(change.getRecipeId());
+				}//end ELSE IF
+			}//end FOR
+		} while(changes.size() == BATCH_SIZE);
+	}//end METHOD poll
+
+	private void rememberGaps(long previousId, long changeId, long now) {
+		if(changeId - previousId - 1 > MAX_TRACKED_GAP) {
+			return;
+		}//end IF
+
+		for(long missing = previousId + 1; missing < changeId; missing++) {
+			gaps.put(missing, now);
+		}//end FOR
+	}//end METHOD rememberGaps
+}//end CLASS
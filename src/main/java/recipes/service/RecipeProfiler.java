@@ -0,0 +1,77 @@
+package recipes.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import jdk.jfr.Recording;
+import provided.util.ExtractBatchEvent;
+import recipes.dao.DaoOperationEvent;
+
+/**
+ * Records the recipe Flight Recorder events from inside the application, for when attaching jcmd
+ * or Mission Control is not an option. The events are {@link ServiceCallEvent},
+ * {@link DaoOperationEvent} and {@link ExtractBatchEvent}.
+ *
+ * An event that no recording has enabled costs only an enabled check where it would be emitted, so
+ * the events stay in the code at no cost outside of profiling. The threshold declared on each event
+ * is a default: each event can be turned on or off and given a new threshold while the recording
+ * runs, and only calls slower than the threshold are recorded. The same settings can be given to
+ * any other recording, for example with jcmd JFR.start and a settings file naming
+ * recipes.ServiceCall, recipes.DaoOperation and recipes.ExtractBatch.
+ */
+public class RecipeProfiler implements AutoCloseable {
+	private final Recording recording = new Recording();
+
+	/**
+	 * Starts recording the three events with the thresholds declared on them.
+	 */
+	public RecipeProfiler() {
+		recording.setName("recipes");
+		recording.setToDisk(true);
+		enable(ServiceCallEvent.NAME);
+		enable(DaoOperationEvent.NAME);
+		enable(ExtractBatchEvent.NAME);
+		recording.start();
+	}//end CONSTRUCTOR
+
+	/**
+	 * Turns an event on, keeping its current threshold.
+	 */
+	public void enable(String eventName) {
+		recording.enable(eventName);
+	}//end METHOD enable
+
+	public void disable(String eventName) {
+		recording.disable(eventName);
+	}//end METHOD disable
+
+	/**
+	 * Turns an event on and records only occurrences that take at least threshold.
+	 */
+	public void setThreshold(String eventName, Duration threshold) {
+		recording.enable(eventName).withThreshold(threshold);
+	}//end METHOD setThreshold
+
+	/**
+	 * Writes what has been recorded so far to a file that JDK Mission Control or the jfr tool can
+	 * read. Recording continues.
+	 */
+	public void dump(Path file) {
+		try {
+			recording.dump(file);
+		}//end TRY
+		catch(IOException e) {
+			throw new UncheckedIOException("Unable to write the recording to " + file, e);
+		}//end CATCH
+	}//end METHOD dump
+
+	/**
+	 * Stops recording and discards anything not dumped.
+	 */
+	@Override
+	public void close() {
+		recording.close();
+	}//end METHOD close
+}//end CLASS
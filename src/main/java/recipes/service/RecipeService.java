@@ -1,132 +1,393 @@
 package recipes.service;
 
-import java.io.IOException;
-import java.net.URISyntaxException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.LinkedList;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
-import jdk.jfr.Category;
+import recipes.dao.DbConnection;
+import recipes.dao.FetchPlan;
+import recipes.dao.ImportResult;
+import recipes.dao.LoadResult;
 import recipes.dao.RecipeDao;
+import recipes.dao.RecipePage;
+import recipes.dao.StatementCacheStats;
+import recipes.dao.UnitOfWork;
+import recipes.entity.Category;
 import recipes.entity.Ingredient;
 import recipes.entity.Recipe;
 import recipes.entity.Step;
 import recipes.entity.Unit;
-import recipes.exception.DbException;
 
 public class RecipeService {
 	private static final String SCHEMA_FILE = "recipe_schema.sql";
 	private static final String DATA_FILE = "recipe_data.sql";
 	
+	private static final long REFERENCE_DATA_TTL_MILLIS = 10 * 60_000;
+	private static final int RECIPE_CACHE_SIZE = 1_000;
+	
+	private static final int SCRIPT_COMMIT_EVERY = 1_000;
+	
 	private RecipeDao recipeDao = new RecipeDao();
+	private ReferenceDataCache referenceData = new ReferenceDataCache(recipeDao, REFERENCE_DATA_TTL_MILLIS);
+	private RecipeCache recipeCache = new RecipeCache(RECIPE_CACHE_SIZE);
+	private SingleFlight<Integer, Recipe> recipeLoads = new SingleFlight<>();
+	private RecipeChangePoller changePoller;
+	private volatile WriteBehindQueue writeBehind;
 	
-	public Recipe fetchRecipeById(Integer recipeId) {
-		return recipeDao.fetchRecipeById(recipeId).orElseThrow(() -> new NoSuchElementException("Recipe with ID=" + recipeId + " does not exist!"));
-	}//end METHOD fetchRecipeById
+	/* Recipes evicted because another node changed them, whose next load must not use the replica. */
+	private Set<Integer> remotelyChanged = ConcurrentHashMap.newKeySet();
 	
-	public void createAndPopulateTables() {
-		loadFromFile(SCHEMA_FILE);
-		loadFromFile(DATA_FILE);
-	}//end METHOD createAndPopulateTables
-
-	private void loadFromFile(String fileName) {
-		String content = readFilecContent(fileName);
-		List<String> sqlStatements = convertContentToSqlStatements(content);
+	/**
+	 * Returns the full recipe graph, from the recipe cache if it is there. On a miss, concurrent
+	 * callers asking for the same recipe share one database load. The returned recipe may be shared
+	 * with other callers and must not be modified.
+	 * 
+	 * Inside a transaction started with {@link #inTransaction(Supplier)} the cache is bypassed, so
+	 * the recipe reflects the transaction's own uncommitted changes and those are never cached.
+	 */
+	public Recipe fetchRecipeById(Integer recipeId) {
+		return ServiceCallEvent.call("fetchRecipeById", () -> {
+			if(UnitOfWork.isActive()) {
+				return recipeDao.fetchRecipeById(recipeId).orElseThrow(() -> new NoSuchElementException("Recipe with ID=" + recipeId + " does not exist!"));
+			}//end IF
 		
-//		sqlStatements.forEach(line -> System.out.println(line));
+			Recipe recipe = recipeCache.get(recipeId);
 		
-		recipeDao.executeBatch(sqlStatements);
-	}//end METHOD loadFromFile
-
-	private List<String> convertContentToSqlStatements(String content) {
-		content = removeComments(content);
-		content = replaceWhitespaceSequencesWithSingleSpace(content);
+			if(Objects.isNull(recipe)) {
+				recipe = recipeLoads.load(recipeId, () -> loadRecipe(recipeId));
+			}//end IF
 		
-		return extractLinesFromContent(content);
-	}//end METHOD convertContentToSqlStatements
+			return recipe;
+		});
+	}//end METHOD fetchRecipeById
 
-	private List<String> extractLinesFromContent(String content) {
-		List<String> lines = new LinkedList<>();
+	private Recipe loadRecipe(Integer recipeId) {
+		long writeStamp = recipeCache.getWriteStamp();
+		boolean fromPrimary = remotelyChanged.remove(recipeId);
+		Optional<Recipe> loaded;
 		
-		while(!content.isEmpty()) {
-			int semiColon = content.indexOf(";");
+		try {
+			loaded = fromPrimary ? DbConnection.readFromPrimary(() -> recipeDao.fetchRecipeById(recipeId)) : recipeDao.fetchRecipeById(recipeId);
+		}//end TRY
+		catch(RuntimeException e) {
+			if(fromPrimary) {
+				remotelyChanged.add(recipeId);
+			}//end IF
 			
-			if(semiColon == -1) {
-				if(!content.isBlank()) {
-					lines.add(content);
-				}//end IF content
-				
-				content = "";
-			}//end IF semiColon
-			else {
-				lines.add(content.substring(0, semiColon).trim());
-				content = content.substring(semiColon + 1);
-			}//end ELSE
-		}//end WHILE
-		return lines;
-	}//end METHOD extractLinesFromContent
-
-	private String replaceWhitespaceSequencesWithSingleSpace(String content) {
-		return content.replaceAll("\\s+", " ");
-	}//end METHOD replaceWhitespace
-
-	private String removeComments(String content) {
-		StringBuilder builder = new StringBuilder(content);
-		int commentPos = 0;
+			throw e;
+		}//end CATCH
 		
-		while((commentPos = builder.indexOf("-- ", commentPos)) != -1) {
-			int eolPos = builder.indexOf("\n", commentPos + 1);
+		Recipe recipe = loaded.orElseThrow(() -> new NoSuchElementException("Recipe with ID=" + recipeId + " does not exist!"));
+		recipeCache.putIfUnchanged(recipeId, recipe, writeStamp);
+		return recipe;
+	}//end METHOD loadRecipe
+
+	/*
+	 * A load already in flight may have read the recipe before the write, so later readers must not
+	 * join it. Inside a transaction the eviction waits until the transaction ends; evicting earlier
+	 * would let another thread cache the recipe as it was before the commit.
+	 */
+	private void invalidateRecipe(Integer recipeId) {
+		UnitOfWork.afterCompletion(() -> {
+			recipeCache.invalidate(recipeId);
+			recipeLoads.forget(recipeId);
+		});
+	}//end METHOD invalidateRecipe
+
+	/*
+	 * The poller reads the change log from the primary, but a replica read right after may not have
+	 * the change yet. Caching that read would keep the old recipe until the next change, so the
+	 * reload goes to the primary.
+	 */
+	private void evictRemoteChange(Integer recipeId) {
+		remotelyChanged.add(recipeId);
+		invalidateRecipe(recipeId);
+	}//end METHOD evictRemoteChange
+
+	/*
+	 * After a change log reset every recipe may have changed. Reads go to the primary for the
+	 * read-your-writes window while the caches refill.
+	 */
+	private void evictAfterReset() {
+		DbConnection.recordWrite();
+		invalidateAllRecipes();
+	}//end METHOD evictAfterReset
+
+	private void invalidateAllRecipes() {
+		UnitOfWork.afterCompletion(() -> {
+			recipeCache.invalidateAll();
+			recipeLoads.forgetAll();
+		});
+	}//end METHOD invalidateAllRecipes
+
+	/**
+	 * Runs work in one transaction on one connection. Every service call made by work on this thread
+	 * takes part in the transaction, which is committed when work returns and rolled back if it
+	 * throws. Calls nested inside another transaction join it.
+	 */
+	public <T> T inTransaction(Supplier<T> work) {
+		return ServiceCallEvent.call("inTransaction", () -> UnitOfWork.call(work));
+	}//end METHOD inTransaction
+
+	public void runInTransaction(Runnable work) {
+		ServiceCallEvent.run("runInTransaction", () -> UnitOfWork.run(work));
+	}//end METHOD runInTransaction
+	
+	/**
+	 * Starts polling the recipe change log so that recipes written by other nodes are evicted from
+	 * this service's cache within about one interval.
+	 */
+	public synchronized void startChangePolling(long intervalMillis) {
+		if(Objects.isNull(changePoller)) {
+			changePoller = new RecipeChangePoller(recipeDao, intervalMillis, this::evictRemoteChange, this::evictAfterReset);
+			changePoller.start();
+		}//end IF
+	}//end METHOD startChangePolling
+
+	public synchronized void stopChangePolling() {
+		if(Objects.nonNull(changePoller)) {
+			changePoller.stop();
+			changePoller = null;
+		}//end IF
+	}//end METHOD stopChangePolling
+
+	/**
+	 * Deletes change log entries older than the given age. Every node must have polled past them.
+	 */
+	public int pruneRecipeChanges(Duration olderThan) {
+		return ServiceCallEvent.call("pruneRecipeChanges", () -> recipeDao.pruneChanges(LocalDateTime.now().minus(olderThan)));
+	}//end METHOD pruneRecipeChanges
+
+	public CacheStats getRecipeCacheStats() {
+		return recipeCache.getStats();
+	}//end METHOD getRecipeCacheStats
+
+	public StatementCacheStats getStatementCacheStats() {
+		return DbConnection.getStatementCacheStats();
+	}//end METHOD getStatementCacheStats
+	
+	public List<Recipe> fetchRecipesByIds(Collection<Integer> recipeIds) {
+		return ServiceCallEvent.call("fetchRecipesByIds", () -> recipeDao.fetchRecipesByIds(recipeIds));
+	}//end METHOD fetchRecipesByIds
+	
+	public void createAndPopulateTables() {
+		createAndPopulateTables(null);
+	}//end METHOD createAndPopulateTables
+
+	/**
+	 * Runs the schema script and then the data script. The listener, which may be null, is called
+	 * with the running totals after every commit.
+	 */
+	public LoadResult createAndPopulateTables(Consumer<LoadResult> progress) {
+		return ServiceCallEvent.call("createAndPopulateTables", () -> {
+			try(SqlScriptReader schema = SqlScriptReader.fromResource(SCHEMA_FILE);
+					SqlScriptReader data = SqlScriptReader.fromResource(DATA_FILE)){
+				/* Read one statement at a time, so the data script is not read until the schema has been run. */
+				Iterator<String> statements = SqlScriptReader.statementsOf(schema, data);
 			
-			if(eolPos == -1) {
-				builder.replace(commentPos, builder.length(), "");
-			}//end IF 
-			else {
-				builder.replace(commentPos, eolPos + 1, "");
-			}//end ELSE
-		}//end WHILE
-		
-		return builder.toString();
-	}//end METHOD removeComments
+				return recipeDao.executeBatch(statements, SCRIPT_COMMIT_EVERY, progress);
+			}//end TRY
+			finally {
+				referenceData.invalidate();
+				invalidateAllRecipes();
+			}//end FINALLY
+		});
+	}//end METHOD createAndPopulateTables
 
-	private String readFilecContent(String fileName) {
-		try {
-			Path path = Paths.get(getClass().getClassLoader().getResource(fileName).toURI());
-			return Files.readString(path);
-		}//end TRY 
-		catch (Exception e) {
-			throw new DbException(e);
-		}//end CATCH
-	}//end METHOD readFilecContent
+	/**
+	 * Loads the unit and category tables into the reference data cache.
+	 */
+	public void preloadReferenceData() {
+		ServiceCallEvent.run("preloadReferenceData", () -> referenceData.preload());
+	}//end METHOD preloadReferenceData
 
 	public Recipe addRecipe(Recipe recipe) {
-		return recipeDao.insertRecipe(recipe);
+		return ServiceCallEvent.call("addRecipe", () -> {
+			Recipe dbRecipe = recipeDao.insertRecipe(recipe);
+			invalidateRecipe(dbRecipe.getRecipeId());
+		
+			return dbRecipe;
+		});
 	}//end METHOD addRecipe
 
+	/**
+	 * Adds a recipe along with its ingredients, steps and categories in a single transaction.
+	 */
+	public Recipe addRecipeGraph(Recipe recipe) {
+		return ServiceCallEvent.call("addRecipeGraph", () -> {
+			Recipe dbRecipe = recipeDao.insertRecipeGraph(recipe);
+			invalidateRecipe(dbRecipe.getRecipeId());
+		
+			return dbRecipe;
+		});
+	}//end METHOD addRecipeGraph
+
+	/**
+	 * Bulk imports recipe graphs, committing every chunkSize recipes. Recipes that fail are skipped
+	 * and listed in the result. The progress listener may be null.
+	 */
+	public ImportResult importRecipes(Stream<Recipe> recipes, int chunkSize, Consumer<ImportResult> progress) {
+		return ServiceCallEvent.call("importRecipes", () -> {
+			try(recipes) {
+				return recipeDao.importRecipes(recipes.iterator(), chunkSize, progress);
+			}//end TRY
+		});
+	}//end METHOD importRecipes
+
 	public List<Recipe> fetchRecipes() {
-		return recipeDao.fetchAllRecipes();
+		return ServiceCallEvent.call("fetchRecipes", () -> recipeDao.fetchAllRecipes());
 	}//end METHOD fetchRecipes
 
+	public List<Recipe> fetchRecipes(FetchPlan plan) {
+		return ServiceCallEvent.call("fetchRecipes", () -> recipeDao.fetchAllRecipes(plan));
+	}//end METHOD fetchRecipes
+
+	/**
+	 * Returns a page of recipes in name order. Pass null for the first page and the previous page's
+	 * continuation token after that.
+	 */
+	public RecipePage fetchRecipePage(int pageSize, String continuationToken) {
+		return ServiceCallEvent.call("fetchRecipePage", () -> recipeDao.fetchRecipePage(pageSize, continuationToken));
+	}//end METHOD fetchRecipePage
+
+	/**
+	 * Streams all recipes without their children. Close the stream when done to release the
+	 * connection.
+	 */
+	public Stream<Recipe> streamRecipes() {
+		return ServiceCallEvent.call("streamRecipes", () -> recipeDao.streamAllRecipes());
+	}//end METHOD streamRecipes
+
 	public List<Unit> fetchUnits() {
-		return recipeDao.fetchAllUnits();
+		return ServiceCallEvent.call("fetchUnits", () -> referenceData.getUnits());
 	}
 
 	public void addIngredient(Ingredient ingredient) {
-		recipeDao.addIngredientToRecipe(ingredient);
+		ServiceCallEvent.run("addIngredient", () -> {
+			try {
+				recipeDao.addIngredientToRecipe(ingredient);
+			}//end TRY
+			finally {
+				invalidateRecipe(ingredient.getRecipeId());
+			}//end FINALLY
+		});
 	}//end METHOD addIngredient
 
 	public void addStep(Step step) {
-		recipeDao.addStepToRecipe(step);
+		ServiceCallEvent.run("addStep", () -> {
+			try {
+				recipeDao.addStepToRecipe(step);
+			}//end TRY
+			finally {
+				invalidateRecipe(step.getRecipeId());
+			}//end FINALLY
+		});
 	}//end METHOD addStep
 
+	/**
+	 * Turns on write-behind for {@link #appendIngredient(Ingredient)} and
+	 * {@link #appendStep(Step)}. Appends are queued, up to capacity, and written in groups of up to
+	 * maxBatchSize at most flushIntervalMillis after they are queued. A caller finding the queue full
+	 * waits up to offerTimeoutMillis for space.
+	 */
+	public synchronized void enableWriteBehind(int capacity, int maxBatchSize, long flushIntervalMillis, long offerTimeoutMillis) {
+		if(Objects.isNull(writeBehind)) {
+			writeBehind = new WriteBehindQueue(recipeDao, capacity, maxBatchSize, flushIntervalMillis, offerTimeoutMillis, this::invalidateRecipe);
+		}//end IF
+	}//end METHOD enableWriteBehind
+
+	/**
+	 * Writes everything still queued and turns write-behind off.
+	 */
+	public synchronized void disableWriteBehind() {
+		ServiceCallEvent.run("disableWriteBehind", () -> {
+			if(Objects.nonNull(writeBehind)) {
+				WriteBehindQueue closing = writeBehind;
+				writeBehind = null;
+				closing.close();
+			}//end IF
+		});
+	}//end METHOD disableWriteBehind
+
+	/**
+	 * Adds an ingredient through the write-behind queue if it is enabled, otherwise immediately. The
+	 * future completes when the ingredient is committed. Inside a transaction the ingredient is
+	 * always written immediately, as part of the transaction.
+	 */
+	public CompletableFuture<Void> appendIngredient(Ingredient ingredient) {
+		return ServiceCallEvent.call("appendIngredient", () -> {
+			WriteBehindQueue queue = writeBehind;
+		
+			if(Objects.nonNull(queue) && !UnitOfWork.isActive()) {
+				return queue.appendIngredient(ingredient);
+			}//end IF
+		
+			addIngredient(ingredient);
+			return CompletableFuture.completedFuture(null);
+		});
+	}//end METHOD appendIngredient
+
+	/**
+	 * Adds a step through the write-behind queue if it is enabled, otherwise immediately. The future
+	 * completes when the step is committed. Inside a transaction the step is always written
+	 * immediately, as part of the transaction.
+	 */
+	public CompletableFuture<Void> appendStep(Step step) {
+		return ServiceCallEvent.call("appendStep", () -> {
+			WriteBehindQueue queue = writeBehind;
+		
+			if(Objects.nonNull(queue) && !UnitOfWork.isActive()) {
+				return queue.appendStep(step);
+			}//end IF
+		
+			addStep(step);
+			return CompletableFuture.completedFuture(null);
+		});
+	}//end METHOD appendStep
+
+	public void moveIngredient(Integer ingredientId, Integer afterIngredientId) {
+		ServiceCallEvent.run("moveIngredient", () -> invalidateRecipe(recipeDao.moveIngredient(ingredientId, afterIngredientId)));
+	}//end METHOD moveIngredient
+
+	public void moveStep(Integer stepId, Integer afterStepId) {
+		ServiceCallEvent.run("moveStep", () -> invalidateRecipe(recipeDao.moveStep(stepId, afterStepId)));
+	}//end METHOD moveStep
+
 	public List<Category> fetchCategories() {
-		return recipeDao.fetchAllCategories();
+		return ServiceCallEvent.call("fetchCategories", () -> referenceData.getCategories());
 	}//end METHOD fetchCategories
 
+	/**
+	 * Adds a category by name. A name found in the reference data cache is bound by ID; an unknown
+	 * name is passed to the database to resolve, which fails if the category does not exist.
+	 */
 	public void addCategoryToRecipe(Integer recipeId, String category) {
-		recipeDao.addCategoryToRecipe(recipeId, category);
+		ServiceCallEvent.run("addCategoryToRecipe", () -> {
+			Category known = referenceData.findCategory(category);
+		
+			try {
+				if(Objects.nonNull(known)) {
+					recipeDao.addCategoryToRecipe(recipeId, known.getCategoryId());
+				}//end IF
+				else {
+					recipeDao.addCategoryToRecipe(recipeId, category);
+				}//end ELSE
+			}//end TRY
+			finally {
+				invalidateRecipe(recipeId);
+			}//end FINALLY
+		});
 	}//end METHOD addCategoryToRecipe
 	
 }//end Class
\ No newline at end of file
@@ -0,0 +1,159 @@
+package recipes.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import recipes.dao.RecipeDao;
+import recipes.entity.Category;
+import recipes.entity.Unit;
+
+/**
+ * A read-through cache for the unit and category tables, which change only when the schema and
+ * seed data are reloaded. Each table is loaded on first use (or by {@link #preload()}) and kept for
+ * ttlMillis before it is read again. {@link #invalidate()} drops both tables at once.
+ */
+public class ReferenceDataCache {
+	private final long ttlMillis;
+	private final Table<Unit, Integer> units;
+	private final Table<Category, String> categories;
+
+	public ReferenceDataCache(RecipeDao recipeDao, long ttlMillis) {
+		this.ttlMillis = ttlMillis;
+		this.units = new Table<>(recipeDao::fetchAllUnits, Unit::getUnitId);
+		this.categories = new Table<>(recipeDao::fetchAllCategories,
+				category -> normalizeName(category.getCategoryName()));
+	}//end CONSTRUCTOR
+
+	/**
+	 * Loads both tables now so that the first user request does not pay for it.
+	 */
+	public void preload() {
+		units.load(true);
+		categories.load(true);
+	}//end METHOD preload
+
+	public void invalidate() {
+		units.invalidate();
+		categories.invalidate();
+	}//end METHOD invalidate
+
+	public List<Unit> getUnits() {
+		return units.get().rows;
+	}//end METHOD getUnits
+
+	public List<Category> getCategories() {
+		return categories.get().rows;
+	}//end METHOD getCategories
+
+	public Map<Integer, Unit> getUnitsById() {
+		return units.get().byKey;
+	}//end METHOD getUnitsById
+
+	/**
+	 * Categories keyed by name. Names are compared without regard to case, as the database does.
+	 */
+	public Map<String, Category> getCategoriesByName() {
+		return categories.get().byKey;
+	}//end METHOD getCategoriesByName
+
+	/**
+	 * Finds a category by name, ignoring case. Returns null if there is no such category.
+	 */
+	public Category findCategory(String categoryName) {
+		return Objects.isNull(categoryName) ? null : getCategoriesByName().get(normalizeName(categoryName));
+	}//end METHOD findCategory
+
+	private static String normalizeName(String name) {
+		return name.trim().toLowerCase(Locale.ROOT);
+	}//end METHOD normalizeName
+
+	/**
+	 * One cached table. The rows and the lookup map are swapped in together as one immutable
+	 * snapshot, so readers never need a lock. Invalidating does not wait for a load in progress;
+	 * instead it bumps the generation, and a load that started before that does not publish what it
+	 * read.
+	 */
+	private class Table<T, K> {
+		private final Supplier<List<T>> loader;
+		private final Function<T, K> keyOf;
+		private final AtomicLong generation = new AtomicLong();
+		private volatile Snapshot<T, K> snapshot;
+
+		Table(Supplier<List<T>> loader, Function<T, K> keyOf) {
+			this.loader = loader;
+			this.keyOf = keyOf;
+		}//end CONSTRUCTOR
+
+		Snapshot<T, K> get() {
+			Snapshot<T, K> current = snapshot;
+
+			if(Objects.nonNull(current) && !current.isExpired()) {
+				return current;
+			}//end IF
+
+			return load(false);
+		}//end METHOD get
+
+		/*
+		 * Only one thread reloads an expired table. The others wait and then use the new snapshot
+		 * rather than all reading the table at once.
+		 */
+		synchronized Snapshot<T, K> load(boolean force) {
+			Snapshot<T, K> current = snapshot;
+
+			if(!force && Objects.nonNull(current) && !current.isExpired()) {
+				return current;
+			}//end IF
+
+			long loadGeneration = generation.get();
+			List<T> rows = loader.get();
+			Map<K, T> byKey = new HashMap<>();
+
+			for(T row : rows) {
+				byKey.putIfAbsent(keyOf.apply(row), row);
+			}//end FOR
+
+			current = new Snapshot<>(Collections.unmodifiableList(rows), Collections.unmodifiableMap(byKey),
+					System.currentTimeMillis() + ttlMillis);
+
+			/* An invalidate can land between the check and the store, so check again after storing. */
+			if(generation.get() == loadGeneration) {
+				snapshot = current;
+
+				if(generation.get() != loadGeneration) {
+					snapshot = null;
+				}//end IF
+			}//end IF
+
+			return current;
+		}//end METHOD load
+
+		void invalidate() {
+			generation.incrementAndGet();
+			snapshot = null;
+		}//end METHOD invalidate
+	}//end CLASS Table
+
+	private static class Snapshot<T, K> {
+		private final List<T> rows;
+		private final Map<K, T> byKey;
+		private final long expiresAt;
+
+		Snapshot(List<T> rows, Map<K, T> byKey, long expiresAt) {
+			this.rows = rows;
+			this.byKey = byKey;
+			this.expiresAt = expiresAt;
+		}//end CONSTRUCTOR
+
+		boolean isExpired() {
+			return System.currentTimeMillis() >= expiresAt;
+		}//end METHOD isExpired
+	}//end CLASS Snapshot
+}//end CLASS
@@ -0,0 +1,72 @@
+package recipes.service;
+
+import java.util.function.Supplier;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * The JDK Flight Recorder event for one {@link RecipeService} call. Its duration covers the whole
+ * call, cache lookups included, so comparing it with the DAO operation events under it shows how
+ * much of a call is spent outside the database.
+ */
+@Name(ServiceCallEvent.NAME)
+@Label("Service Call")
+@Category({"Recipes", "Service"})
+@Description("One call to a RecipeService method")
+@StackTrace(false)
+@Threshold("10 ms")
+public final class ServiceCallEvent extends Event {
+	public static final String NAME = "recipes.ServiceCall";
+
+	@Label("Method")
+	String method;
+
+	@Label("Failed")
+	@Description("The call ended with an exception")
+	boolean failed;
+
+	private ServiceCallEvent() {
+	}//end CONSTRUCTOR
+
+	/**
+	 * Runs work as a call to the named service method and returns its result.
+	 */
+	static <T> T call(String method, Supplier<T> work) {
+		ServiceCallEvent event = new ServiceCallEvent();
+
+		if(!event.isEnabled()) {
+			return work.get();
+		}//end IF
+
+		event.begin();
+
+		try {
+			return work.get();
+		}//end TRY
+		catch(RuntimeException | Error e) {
+			event.failed = true;
+			throw e;
+		}//end CATCH
+		finally {
+			event.end();
+
+			if(event.shouldCommit()) {
+				event.method = method;
+				event.commit();
+			}//end IF
+		}//end FINALLY
+	}//end METHOD call
+
+	static void run(String method, Runnable work) {
+		call(method, () -> {
+			work.run();
+			return null;
+		});
+	}//end METHOD run
+}//end CLASS
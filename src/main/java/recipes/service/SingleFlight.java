@@ -0,0 +1,78 @@
+package recipes.service;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key. The first caller for a key runs the loader; callers
+ * that arrive while it is running wait for it and get the same result, or the same exception,
+ * instead of running the loader themselves. Once the load finishes the key is forgotten, so the
+ * next call loads again.
+ *
+ * @param <K> The key type.
+ * @param <V> The value type.
+ */
+public class SingleFlight<K, V> {
+	private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+	public V load(K key, Supplier<V> loader) {
+		CompletableFuture<V> mine = new CompletableFuture<>();
+		CompletableFuture<V> leader = inFlight.putIfAbsent(key, mine);
+
+		if(Objects.nonNull(leader)) {
+			return await(leader);
+		}//end IF
+
+		try {
+			V value = loader.get();
+			mine.complete(value);
+			return value;
+		}//end TRY
+		catch(RuntimeException | Error e) {
+			mine.completeExceptionally(e);
+			throw e;
+		}//end CATCH
+		finally {
+			inFlight.remove(key, mine);
+		}//end FINALLY
+	}//end METHOD load
+
+	/**
+	 * Stops later callers from joining a load that is already running for the key. Use this after a
+	 * write, when the running load may have read the old data.
+	 */
+	public void forget(K key) {
+		inFlight.remove(key);
+	}//end METHOD forget
+
+	public void forgetAll() {
+		inFlight.clear();
+	}//end METHOD forgetAll
+
+	public int getInFlightCount() {
+		return inFlight.size();
+	}//end METHOD getInFlightCount
+
+	private V await(CompletableFuture<V> leader) {
+		try {
+			return leader.join();
+		}//end TRY
+		catch(CompletionException e) {
+			Throwable cause = e.getCause();
+
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}//end IF
+
+			if(cause instanceof Error) {
+				throw (Error)cause;
+			}//end IF
+
+			throw e;
+		}//end CATCH
+	}//end METHOD await
+}//end CLASS
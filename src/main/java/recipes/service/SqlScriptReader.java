@@ -0,0 +1,251 @@
+package recipes.service;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+import recipes.exception.DbException;
+
+/**
+ * Splits a SQL script into statements as it reads it, so a script of any size is read in constant
+ * memory apart from the statement being built.
+ *
+ * Statements end at a semicolon that is outside a quoted string or identifier ('...', "..." or
+ * `...`). Comments (-- to end of line, # to end of line and block comments) are dropped, except
+ * for MySQL's executable comments and optimizer hints (/*! ... and /*+ ...), which are kept as part
+ * of the statement. Runs of whitespace outside quotes become a single space; text inside quotes,
+ * including backslash escapes, is passed through unchanged.
+ */
+public class SqlScriptReader implements Closeable {
+	private static final int EOF = -1;
+
+	private final Reader reader;
+	private final StringBuilder statement = new StringBuilder();
+	private int pushedBack = EOF;
+	private boolean pendingSpace;
+
+	public SqlScriptReader(InputStream in) {
+		this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+	}//end CONSTRUCTOR
+
+	/**
+	 * Opens a script on the classpath. This works for scripts packaged inside a jar as well as for
+	 * files on disk.
+	 */
+	public static SqlScriptReader fromResource(String resourceName) {
+		InputStream in = SqlScriptReader.class.getClassLoader().getResourceAsStream(resourceName);
+
+		if(Objects.isNull(in)) {
+			throw new DbException("SQL script " + resourceName + " was not found on the classpath");
+		}//end IF
+
+		return new SqlScriptReader(in);
+	}//end METHOD fromResource
+
+	/**
+	 * Returns the next statement without its terminating semicolon, or null at the end of the
+	 * script. A final statement without a semicolon is returned as well.
+	 */
+	public String nextStatement() {
+		try {
+			statement.setLength(0);
+			pendingSpace = false;
+
+			int ch;
+
+			while((ch = read()) != EOF) {
+				if(ch == ';') {
+					if(statement.length() > 0) {
+						return statement.toString();
+					}//end IF
+
+					continue;
+				}//end IF
+
+				if(Character.isWhitespace(ch)) {
+					pendingSpace = true;
+				}//end IF
+				else if(ch == '\'' || ch == '"' || ch == '`') {
+					append(ch);
+					readQuoted(ch);
+				}//end ELSE IF
+				else if(ch == '#') {
+					skipToEndOfLine();
+				}//end ELSE IF
+				else if(ch == '-' && peek() == '-') {
+					read();
+
+					if(Character.isWhitespace(peek()) || peek() == EOF) {
+						skipToEndOfLine();
+					}//end IF
+					else {
+						append('-');
+						statement.append('-');
+					}//end ELSE
+				}//end ELSE IF
+				else if(ch == '/' && peek() == '*') {
+					read();
+					readBlockComment();
+				}//end ELSE IF
+				else {
+					append(ch);
+				}//end ELSE
+			}//end WHILE
+
+			return statement.length() > 0 ? statement.toString() : null;
+		}//end TRY
+		catch(IOException e) {
+			throw new DbException(e);
+		}//end CATCH
+	}//end METHOD nextStatement
+
+	/**
+	 * Returns the statements of several scripts, one script after another, reading each statement
+	 * only when it is asked for, so no more than the current statement is held.
+	 */
+	public static Iterator<String> statementsOf(SqlScriptReader... scripts) {
+		return new Iterator<String>() {
+			private int script;
+			private String next;
+
+			@Override
+			public boolean hasNext() {
+				while(Objects.isNull(next) && script < scripts.length) {
+					next = scripts[script].nextStatement();
+
+					if(Objects.isNull(next)) {
+						script++;
+					}//end IF
+				}//end WHILE
+
+				return Objects.nonNull(next);
+			}//end METHOD hasNext
+
+			@Override
+			public String next() {
+				if(!hasNext()) {
+					throw new NoSuchElementException();
+				}//end IF
+
+				String statement = next;
+				next = null;
+				return statement;
+			}//end METHOD next
+		};
+	}//end METHOD statementsOf
+
+	/*
+	 * Copies a quoted string or identifier up to and including its closing quote. A doubled quote
+	 * closes and immediately reopens the literal, so it needs no special case.
+	 */
+	private void readQuoted(int quote) throws IOException {
+		int ch;
+
+		while((ch = read()) != EOF) {
+			statement.append((char)ch);
+
+			if(ch == '\\' && quote != '`') {
+				int escaped = read();
+
+				if(escaped != EOF) {
+					statement.append((char)escaped);
+				}//end IF
+			}//end IF
+			else if(ch == quote) {
+				return;
+			}//end ELSE IF
+		}//end WHILE
+
+		throw new DbException("Unterminated " + (char)quote + " quote in SQL script near: " + abbreviate(statement));
+	}//end METHOD readQuoted
+
+	private void readBlockComment() throws IOException {
+		int first = peek();
+		boolean keep = first == '!' || first == '+';
+
+		if(keep) {
+			append('/');
+			statement.append('*');
+		}//end IF
+
+		int previous = EOF;
+		int ch;
+
+		while((ch = read()) != EOF) {
+			if(keep) {
+				statement.append((char)ch);
+			}//end IF
+
+			if(previous == '*' && ch == '/') {
+				pendingSpace = !keep;
+				return;
+			}//end IF
+
+			previous = ch;
+		}//end WHILE
+
+		throw new DbException("Unterminated comment in SQL script near: " + abbreviate(statement));
+	}//end METHOD readBlockComment
+
+	private void skipToEndOfLine() throws IOException {
+		int ch;
+
+		while((ch = read()) != EOF && ch != '\n') {
+			/* Skip the comment. */
+		}//end WHILE
+
+		pendingSpace = true;
+	}//end METHOD skipToEndOfLine
+
+	/*
+	 * Appends a character outside of quotes, writing a single space first if whitespace or a comment
+	 * separated it from the previous character.
+	 */
+	private void append(int ch) {
+		if(pendingSpace && statement.length() > 0) {
+			statement.append(' ');
+		}//end IF
+
+		pendingSpace = false;
+		statement.append((char)ch);
+	}//end METHOD append
+
+	private int read() throws IOException {
+		if(pushedBack != EOF) {
+			int ch = pushedBack;
+			pushedBack = EOF;
+			return ch;
+		}//end IF
+
+		return reader.read();
+	}//end METHOD read
+
+	private int peek() throws IOException {
+		if(pushedBack == EOF) {
+			pushedBack = reader.read();
+		}//end IF
+
+		return pushedBack;
+	}//end METHOD peek
+
+	private String abbreviate(CharSequence text) {
+		return text.length() <= 80 ? text.toString() : text.subSequence(0, 80) + "...";
+	}//end METHOD abbreviate
+
+	@Override
+	public void close() {
+		try {
+			reader.close();
+		}//end TRY
+		catch(IOException e) {
+			throw new DbException(e);
+		}//end CATCH
+	}//end METHOD close
+}//end CLASS
@@ -0,0 +1,261 @@
+package recipes.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import recipes.dao.RecipeDao;
+import recipes.entity.Ingredient;
+import recipes.entity.Step;
+
+/**
+ * Buffers ingredient and step appends and writes them in groups. A flusher thread takes whatever
+ * has queued up, waiting at most flushIntervalMillis after the first append or until maxBatchSize
+ * appends are waiting, and writes the group in one transaction with
+ * {@link RecipeDao#appendChildren(List, List)}.
+ *
+ * Each append returns a future that completes once its row is committed, or completes
+ * exceptionally if it could not be written. If a group fails, its appends are retried one at a
+ * time so that one bad append does not fail the others. When the queue is full, callers block for
+ * up to offerTimeoutMillis and are then rejected.
+ */
+public class WriteBehindQueue implements AutoCloseable {
+	private static final long CLOSE_CHECK_MILLIS = 100;
+
+	private final RecipeDao recipeDao;
+	private final int maxBatchSize;
+	private final long flushIntervalMillis;
+	private final long offerTimeoutMillis;
+	private final Consumer<Integer> onCommitted;
+
+	private final BlockingQueue<Append> queue;
+	private final Thread flusher;
+	private volatile boolean closed;
+
+	/**
+	 * onCommitted is called with the ID of every recipe written by a flush, after the flush's
+	 * transaction ends.
+	 */
+	public WriteBehindQueue(RecipeDao recipeDao, int capacity, int maxBatchSize, long flushIntervalMillis,
+			long offerTimeoutMillis, Consumer<Integer> onCommitted) {
+		if(capacity < 1 || maxBatchSize < 1) {
+			throw new IllegalArgumentException("Invalid queue size: capacity=" + capacity + ", maxBatchSize=" + maxBatchSize);
+		}//end IF
+
+		this.recipeDao = recipeDao;
+		this.maxBatchSize = maxBatchSize;
+		this.flushIntervalMillis = flushIntervalMillis;
+		this.offerTimeoutMillis = offerTimeoutMillis;
+		this.onCommitted = onCommitted;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+
+		flusher = new Thread(this::runFlusher, "write-behind-flusher");
+		flusher.setDaemon(true);
+		flusher.start();
+	}//end CONSTRUCTOR
+
+	public CompletableFuture<Void> appendIngredient(Ingredient ingredient) {
+		return enqueue(new Append(ingredient, null));
+	}//end METHOD appendIngredient
+
+	public CompletableFuture<Void> appendStep(Step step) {
+		return enqueue(new Append(null, step));
+	}//end METHOD appendStep
+
+	public int getQueuedCount() {
+		return queue.size();
+	}//end METHOD getQueuedCount
+
+	private CompletableFuture<Void> enqueue(Append append) {
+		if(closed) {
+			throw new RejectedExecutionException("Write-behind queue is closed");
+		}//end IF
+
+		try {
+			if(!queue.offer(append, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				throw new RejectedExecutionException("Write-behind queue is full after waiting " + offerTimeoutMillis + "ms");
+			}//end IF
+		}//end TRY
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RejectedExecutionException("Interrupted waiting for space in the write-behind queue", e);
+		}//end CATCH
+
+		/* close() may have run its final drain between the check above and the offer. */
+		if(closed && queue.remove(append)) {
+			throw new RejectedExecutionException("Write-behind queue is closed");
+		}//end IF
+
+		return append.done;
+	}//end METHOD enqueue
+
+	/**
+	 * Stops accepting appends, writes everything already queued and waits for the flusher to finish.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+
+		try {
+			flusher.join();
+		}//end TRY
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}//end CATCH
+
+		/* An append that raced with close() may have missed the final flush. */
+		List<Append> leftover = new ArrayList<>();
+		queue.drainTo(leftover);
+		leftover.forEach(append -> append.done.completeExceptionally(new RejectedExecutionException("Write-behind queue is closed")));
+	}//end METHOD close
+
+	private void runFlusher() {
+		List<Append> batch = new ArrayList<>(maxBatchSize);
+
+		while(!closed || !queue.isEmpty()) {
+			try {
+				collect(batch);
+			}//end TRY
+			catch(InterruptedException e) {
+				/* Nothing interrupts the flusher on purpose; write what was collected and keep going. */
+				Thread.interrupted();
+			}//end CATCH
+
+			if(!batch.isEmpty()) {
+				flush(batch);
+				batch.clear();
+			}//end IF
+		}//end WHILE
+	}//end METHOD runFlusher
+
+	/*
+	 * Waits for the first append, then keeps collecting until the window closes or the batch is full.
+	 * The flusher is not interrupted to stop it, since an interrupt would fail the JDBC calls of a
+	 * flush in progress; instead the wait for the first append is short enough to notice close().
+	 */
+	private void collect(List<Append> batch) throws InterruptedException {
+		if(closed) {
+			queue.drainTo(batch, maxBatchSize);
+			return;
+		}//end IF
+
+		Append first = queue.poll(CLOSE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+
+		if(Objects.isNull(first)) {
+			return;
+		}//end IF
+
+		batch.add(first);
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+
+		while(batch.size() < maxBatchSize) {
+			queue.drainTo(batch, maxBatchSize - batch.size());
+
+			long remaining = deadline - System.nanoTime();
+
+			if(batch.size() >= maxBatchSize || remaining <= 0) {
+				break;
+			}//end IF
+
+			Append next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+
+			if(Objects.isNull(next)) {
+				break;
+			}//end IF
+
+			batch.add(next);
+		}//end WHILE
+	}//end METHOD collect
+
+	/*
+	 * The affected recipes are invalidated before any future completes, so a caller that waits for
+	 * its append and then reads the recipe never gets the cached graph from before the append.
+	 */
+	private void flush(List<Append> batch) {
+		try {
+			write(batch);
+		}//end TRY
+		catch(RuntimeException e) {
+			/* Something in the group is bad. Find it by writing the appends one at a time. */
+			for(Append append : batch) {
+				List<Append> single = List.of(append);
+
+				try {
+					write(single);
+					notifyCommitted(single);
+					append.done.complete(null);
+				}//end TRY
+				catch(RuntimeException failed) {
+					notifyCommitted(single);
+					append.done.completeExceptionally(failed);
+				}//end CATCH
+			}//end FOR
+
+			return;
+		}//end CATCH
+
+		notifyCommitted(batch);
+		batch.forEach(append -> append.done.complete(null));
+	}//end METHOD flush
+
+	private void write(List<Append> batch) {
+		List<Ingredient> ingredients = new ArrayList<>();
+		List<Step> steps = new ArrayList<>();
+
+		for(Append append : batch) {
+			if(Objects.nonNull(append.ingredient)) {
+				ingredients.add(append.ingredient);
+			}//end IF
+			else {
+				steps.add(append.step);
+			}//end ELSE
+		}//end FOR
+
+		recipeDao.appendChildren(ingredients, steps);
+	}//end METHOD write
+
+	private void notifyCommitted(List<Append> batch) {
+		if(Objects.isNull(onCommitted)) {
+			return;
+		}//end IF
+
+		Set<Integer> recipeIds = new LinkedHashSet<>();
+		batch.forEach(append -> recipeIds.add(append.getRecipeId()));
+
+		for(Integer recipeId : recipeIds) {
+			try {
+				onCommitted.accept(recipeId);
+			}//end TRY
+			catch(RuntimeException e) {
+				System.out.println("Write-behind commit listener failed: " + e);
+			}//end CATCH
+		}//end FOR
+	}//end METHOD notifyCommitted
+
+	/**
+	 * One queued ingredient or step and the future its caller is holding.
+	 */
+	private static class Append {
+		private final Ingredient ingredient;
+		private final Step step;
+		private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+		Append(Ingredient ingredient, Step step) {
+			this.ingredient = ingredient;
+			this.step = step;
+		}//end CONSTRUCTOR
+
+		Integer getRecipeId() {
+			return Objects.nonNull(ingredient) ? ingredient.getRecipeId() : step.getRecipeId();
+		}//end METHOD getRecipeId
+	}//end CLASS Append
+}//end CLASS
@@ -1,3 +1,5 @@
+DROP TABLE IF EXISTS recipe_change_epoch;
+DROP TABLE IF EXISTS recipe_change;
 DROP TABLE IF EXISTS ingredient;
 DROP TABLE IF EXISTS step;
 DROP TABLE IF EXISTS recipe_category;
@@ -14,7 +16,8 @@ CREATE TABLE recipe (
 	prep_time TIME,
 	cook_time TIME,
 	created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
-    PRIMARY KEY (recipe_id)
+    PRIMARY KEY (recipe_id),
+    INDEX idx_recipe_name_id (recipe_name, recipe_id)
 );
 
 CREATE TABLE category (
@@ -43,7 +46,8 @@ CREATE TABLE step(
     step_order INT NOT NULL,
     step_text TEXT NOT NULL,
     PRIMARY KEY (step_id),
-    FOREIGN KEY (recipe_id) REFERENCES recipe (recipe_id) ON DELETE CASCADE
+    FOREIGN KEY (recipe_id) REFERENCES recipe (recipe_id) ON DELETE CASCADE,
+    UNIQUE KEY (recipe_id, step_order)
 );
 
 CREATE TABLE ingredient(
@@ -56,5 +60,22 @@ ingredient_order INT NOT NULL,
 amount DECIMAL(7, 2),
 PRIMARY KEY (ingredient_id),
 FOREIGN KEY (recipe_id) REFERENCES recipe (recipe_id) ON DELETE CASCADE,
-FOREIGN KEY (unit_id) REFERENCES unit (unit_id)
+FOREIGN KEY (unit_id) REFERENCES unit (unit_id),
+UNIQUE KEY (recipe_id, ingredient_order)
+);
+
+CREATE TABLE recipe_change (
+	change_id BIGINT AUTO_INCREMENT NOT NULL,
+	recipe_id INT NOT NULL,
+	changed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (change_id),
+    INDEX (changed_at)
 );
+
+-- A new value each time the schema is loaded, so that pollers can tell the change log was re-created.
+CREATE TABLE recipe_change_epoch (
+	epoch CHAR(36) NOT NULL,
+    PRIMARY KEY (epoch)
+);
+
+INSERT INTO recipe_change_epoch (epoch) VALUES (UUID());
@@ -0,0 +1,71 @@
+package recipes.dao;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class MultiRowInsertTest {
+
+	@Test
+	void acceptsOneTuple() {
+		assertTrue(BatchLoader.MultiRowInsert.isRowList("(1, 'a')"));
+	}//end METHOD acceptsOneTuple
+
+	@Test
+	void acceptsSeveralTuples() {
+		assertTrue(BatchLoader.MultiRowInsert.isRowList("(1, 'a'), (2, 'b') ,(3, NULL)"));
+	}//end METHOD acceptsSeveralTuples
+
+	@Test
+	void acceptsNestedParentheses() {
+		assertTrue(BatchLoader.MultiRowInsert.isRowList("(1, LOWER('A')), (2, (SELECT 3))"));
+	}//end METHOD acceptsNestedParentheses
+
+	@Test
+	void ignoresParenthesesAndCommasInQuotes() {
+		assertTrue(BatchLoader.MultiRowInsert.isRowList("(1, 'a), (b'), (2, \"(\"), (3, `c)`)"));
+	}//end METHOD ignoresParenthesesAndCommasInQuotes
+
+	@Test
+	void handlesDoubledQuotesAndBackslashEscapes() {
+		assertTrue(BatchLoader.MultiRowInsert.isRowList("(1, 'it''s'), (2, 'a\\')b')"));
+	}//end METHOD handlesDoubledQuotesAndBackslashEscapes
+
+	@Test
+	void rejectsEmptyText() {
+		assertFalse(BatchLoader.MultiRowInsert.isRowList(""));
+		assertFalse(BatchLoader.MultiRowInsert.isRowList("  "));
+	}//end METHOD rejectsEmptyText
+
+	@Test
+	void rejectsTrailingClause() {
+		assertFalse(BatchLoader.MultiRowInsert.isRowList("(1, 'a') ON DUPLICATE KEY UPDATE name = 'a'"));
+	}//end METHOD rejectsTrailingClause
+
+	@Test
+	void rejectsTrailingComma() {
+		assertFalse(BatchLoader.MultiRowInsert.isRowList("(1, 'a'),"));
+	}//end METHOD rejectsTrailingComma
+
+	@Test
+	void rejectsTuplesWithoutComma() {
+		assertFalse(BatchLoader.MultiRowInsert.isRowList("(1) (2)"));
+	}//end METHOD rejectsTuplesWithoutComma
+
+	@Test
+	void rejectsUnbalancedParentheses() {
+		assertFalse(BatchLoader.MultiRowInsert.isRowList("(1, 'a'"));
+		assertFalse(BatchLoader.MultiRowInsert.isRowList("(1, 'a'))"));
+	}//end METHOD rejectsUnbalancedParentheses
+
+	@Test
+	void rejectsUnterminatedQuote() {
+		assertFalse(BatchLoader.MultiRowInsert.isRowList("(1, 'a)"));
+	}//end METHOD rejectsUnterminatedQuote
+
+	@Test
+	void rejectsSelectSource() {
+		assertFalse(BatchLoader.MultiRowInsert.isRowList("SELECT 1"));
+	}//end METHOD rejectsSelectSource
+}//end CLASS
@@ -0,0 +1,117 @@
+package recipes.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import recipes.exception.DbException;
+
+class SqlScriptReaderTest {
+
+	@Test
+	void splitsStatementsOnSemicolons() {
+		assertEquals(List.of("SELECT 1", "SELECT 2"), statementsIn("SELECT 1; SELECT 2;"));
+	}//end METHOD splitsStatementsOnSemicolons
+
+	@Test
+	void keepsSemicolonsInsideQuotes() {
+		assertEquals(List.of("INSERT INTO t VALUES ('a;b', \"c;d\", `e;f`)", "SELECT 1"),
+				statementsIn("INSERT INTO t VALUES ('a;b', \"c;d\", `e;f`); SELECT 1;"));
+	}//end METHOD keepsSemicolonsInsideQuotes
+
+	@Test
+	void keepsDoubledQuotesAndBackslashEscapes() {
+		assertEquals(List.of("SELECT 'it''s;', 'a\\';b', \"say \\\"hi\\\";\""),
+				statementsIn("SELECT 'it''s;', 'a\\';b', \"say \\\"hi\\\";\";"));
+	}//end METHOD keepsDoubledQuotesAndBackslashEscapes
+
+	@Test
+	void keepsWhitespaceInsideQuotes() {
+		assertEquals(List.of("SELECT 'a  \n  b'"), statementsIn("SELECT\n\t'a  \n  b'  ;"));
+	}//end METHOD keepsWhitespaceInsideQuotes
+
+	@Test
+	void dropsDoubleDashComments() {
+		assertEquals(List.of("SELECT 1", "SELECT 2"), statementsIn("-- header; not a statement\nSELECT 1; -- one\nSELECT 2;--\n"));
+	}//end METHOD dropsDoubleDashComments
+
+	@Test
+	void keepsDoubleDashWithoutFollowingWhitespace() {
+		assertEquals(List.of("SELECT 5--3"), statementsIn("SELECT 5--3;"));
+	}//end METHOD keepsDoubleDashWithoutFollowingWhitespace
+
+	@Test
+	void dropsHashComments() {
+		assertEquals(List.of("SELECT 1", "SELECT 2"), statementsIn("# header; not a statement\nSELECT 1; # one\nSELECT 2;"));
+	}//end METHOD dropsHashComments
+
+	@Test
+	void dropsBlockComments() {
+		assertEquals(List.of("SELECT 1 + 2"), statementsIn("SELECT 1 /* one; */ + /* multi\nline */ 2;"));
+	}//end METHOD dropsBlockComments
+
+	@Test
+	void keepsExecutableCommentsAndHints() {
+		assertEquals(List.of("SELECT /*! STRAIGHT_JOIN */ 1", "SELECT /*+ NO_ICP(t) */ 2"),
+				statementsIn("SELECT /*! STRAIGHT_JOIN */ 1; SELECT /*+ NO_ICP(t) */ 2;"));
+	}//end METHOD keepsExecutableCommentsAndHints
+
+	@Test
+	void returnsFinalStatementWithoutSemicolon() {
+		assertEquals(List.of("SELECT 1", "SELECT 2"), statementsIn("SELECT 1;\nSELECT 2\n"));
+	}//end METHOD returnsFinalStatementWithoutSemicolon
+
+	@Test
+	void skipsEmptyStatements() {
+		assertEquals(List.of("SELECT 1"), statementsIn(";; SELECT 1;;\n-- done\n"));
+	}//end METHOD skipsEmptyStatements
+
+	@Test
+	void returnsNullAtEndOfScript() {
+		try(SqlScriptReader reader = readerOf("SELECT 1;")) {
+			assertEquals("SELECT 1", reader.nextStatement());
+			assertNull(reader.nextStatement());
+			assertNull(reader.nextStatement());
+		}//end TRY
+	}//end METHOD returnsNullAtEndOfScript
+
+	@Test
+	void rejectsUnterminatedQuote() {
+		assertThrows(DbException.class, () -> statementsIn("SELECT 'abc;"));
+	}//end METHOD rejectsUnterminatedQuote
+
+	@Test
+	void rejectsUnterminatedComment() {
+		assertThrows(DbException.class, () -> statementsIn("SELECT 1 /* abc;"));
+	}//end METHOD rejectsUnterminatedComment
+
+	@Test
+	void statementsOfReadsScriptsInOrder() {
+		Iterator<String> statements = SqlScriptReader.statementsOf(readerOf("SELECT 1; SELECT 2"), readerOf(""),
+				readerOf("SELECT 3;"));
+		List<String> read = new ArrayList<>();
+		statements.forEachRemaining(read::add);
+
+		assertEquals(List.of("SELECT 1", "SELECT 2", "SELECT 3"), read);
+		assertFalse(statements.hasNext());
+	}//end METHOD statementsOfReadsScriptsInOrder
+
+	private static List<String> statementsIn(String script) {
+		List<String> statements = new ArrayList<>();
+		SqlScriptReader.statementsOf(readerOf(script)).forEachRemaining(statements::add);
+		return statements;
+	}//end METHOD statementsIn
+
+	private static SqlScriptReader readerOf(String script) {
+		return new SqlScriptReader(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)));
+	}//end METHOD readerOf
+}//end CLASS